@@ -1,13 +1,22 @@
 package com.printmagus.preflight.console;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.printmagus.preflight.BatchPreflight;
+import com.printmagus.preflight.MemoryPolicy;
 import com.printmagus.preflight.Preflight;
 import com.printmagus.preflight.Violation;
 import com.printmagus.preflight.rule.*;
@@ -15,7 +24,6 @@ import com.printmagus.preflight.serializer.GsonBuilderFactory;
 import com.printmagus.preflight.serializer.PDImageXObjectSerializer;
 import com.printmagus.preflight.standard.X1a;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
@@ -39,20 +47,39 @@ public class Application implements ApplicationRunner
 
         Path resultPath = Paths.get("results", String.valueOf(System.currentTimeMillis()));
 
-        File file = new File("src/main/resources/liliput-magazin-beliv.pdf");
-        PDDocument document = PDDocument.load(file);
+        // The documents and the names of their results
+        Map<Path, String> paths = new LinkedHashMap<>();
+        Set<String> names = new HashSet<>();
+
+        for (String arg: args.getNonOptionArgs()) {
+            Path path = Paths.get(arg);
+
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(file -> file.toString().toLowerCase().endsWith(".pdf")).forEach(
+                        file -> paths.computeIfAbsent(file, key -> getResultName(path.relativize(key), names))
+                    );
+                }
+            } else {
+                paths.computeIfAbsent(path, key -> getResultName(key.getFileName(), names));
+            }
+        }
 
-        Preflight preflight = new Preflight();
+        if (paths.isEmpty()) {
+            Path path = Paths.get("src/main/resources/liliput-magazin-beliv.pdf");
 
-        preflight.addStandard(new X1a());
-        preflight.addRule(new PageCount(3, 5));
-        preflight.addRule(new ImageMinDpi(300));
-        preflight.addRule(new MaxInkDensityText(320));
-        preflight.addRule(new MaxInkDensityImage(320));
-        preflight.addRule(new BoxSize(COSName.TRIM_BOX, 680, 980));
-        preflight.addRule(new BoxSize(COSName.BLEED_BOX, 686, 986));
+            paths.put(path, getResultName(path.getFileName(), names));
+        }
+
+        int parallelism = args.containsOption("parallelism")
+            ? Integer.parseInt(args.getOptionValues("parallelism").get(0))
+            : Runtime.getRuntime().availableProcessors();
+
+        BatchPreflight batch = new BatchPreflight(Application::createPreflight, parallelism);
 
-        List<Violation> violations = preflight.validate(document);
+        if (args.containsOption("memory")) {
+            batch.setMemoryPolicy(createMemoryPolicy(args.getOptionValues("memory").get(0)));
+        }
 
         GsonBuilder builder = GsonBuilderFactory.create().setPrettyPrinting().serializeNulls();
         /*builder.registerTypeAdapter(
@@ -62,23 +89,86 @@ public class Application implements ApplicationRunner
 
         Gson gson = builder.create();
 
-        File result = new File(resultPath + "/data.json");
-        result.getParentFile().mkdirs();
+        resultPath.toFile().mkdirs();
 
-        PrintWriter writer = new PrintWriter(result);
-        writer.println(gson.toJson(violations));
-        writer.close();
+        batch.validate(paths.keySet().stream(), batchResult -> {
+            String name = paths.get(batchResult.getPath());
 
-        for (Violation violation: violations) {
-            System.out.println(gson.toJson(violation));
-            // System.out.println(violation);
-        }
+            if (batchResult.getError() != null) {
+                System.out.println(name + ": " + batchResult.getError().getMessage());
+
+                return;
+            }
+
+            List<Violation> violations = batchResult.getResult().getViolations();
+
+            File result = resultPath.resolve(name + ".json").toFile();
+
+            result.getParentFile().mkdirs();
 
-        System.out.println(violations.size());
+            try (PrintWriter writer = new PrintWriter(result)) {
+                writer.println(gson.toJson(violations));
+            } catch (FileNotFoundException e) {
+                System.out.println(name + ": " + e.getMessage());
+            }
+
+            System.out.println(name + ": " + violations.size() + " (" + batchResult.getTime() + " ms)");
+        });
 
         stopWatch.stop();
 
         System.out.println(stopWatch.getTotalTimeMillis());
         System.exit(0);
     }
+
+    /**
+     * The path of the document relative to the walked directory, so documents of the same name in different
+     * directories do not overwrite each other's result. A number is appended if the name is already taken,
+     * eg. by two directories or files given on the command line.
+     */
+    private static String getResultName(Path relative, Set<String> names)
+    {
+        String name = relative.toString();
+
+        for (int i = 2; !names.add(name); i++) {
+            name = relative.toString() + "-" + i;
+        }
+
+        return name;
+    }
+
+    /**
+     * heap, scratch, mixed:<max heap MB> or auto
+     */
+    private static MemoryPolicy createMemoryPolicy(String value)
+    {
+        if (value.equals("heap")) {
+            return MemoryPolicy.heap();
+        }
+
+        if (value.equals("scratch")) {
+            return MemoryPolicy.scratch();
+        }
+
+        if (value.startsWith("mixed:")) {
+            return MemoryPolicy.mixed(Long.parseLong(value.substring(6)) * 1024 * 1024);
+        }
+
+        return MemoryPolicy.auto();
+    }
+
+    private static Preflight createPreflight()
+    {
+        Preflight preflight = new Preflight();
+
+        preflight.addStandard(new X1a());
+        preflight.addRule(new PageCount(3, 5));
+        preflight.addRule(new ImageMinDpi(300));
+        preflight.addRule(new MaxInkDensityText(320));
+        preflight.addRule(new MaxInkDensityImage(320));
+        preflight.addRule(new BoxSize(COSName.TRIM_BOX, 680, 980));
+        preflight.addRule(new BoxSize(COSName.BLEED_BOX, 686, 986));
+
+        return preflight;
+    }
 }
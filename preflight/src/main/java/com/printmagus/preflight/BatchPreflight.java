@@ -0,0 +1,172 @@
+package com.printmagus.preflight;
+
+import com.printmagus.preflight.util.DocumentEstimate;
+import com.printmagus.preflight.util.ValidationCancelledException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Validates many documents concurrently.
+ *
+ * At most `parallelism` documents are validated at once, and a document is only admitted when its estimated
+ * heap need fits the remaining heap budget. A document which needs more than the whole budget waits until
+ * it can run alone. Admission is estimated from the file size, the worker refines the estimate with the pages
+ * and images of the loaded document, and waits for the difference before validating it.
+ *
+ * Rules keep state during a validation, so every worker thread gets its own Preflight from the factory.
+ * The memory policy of the batch is applied to each of them, so the estimates match how documents are loaded.
+ */
+public class BatchPreflight
+{
+    private final Supplier<Preflight> factory;
+    private final int parallelism;
+    private final long heapBudget;
+    private MemoryPolicy memoryPolicy = MemoryPolicy.auto();
+
+    public BatchPreflight(Supplier<Preflight> factory, int parallelism)
+    {
+        this(factory, parallelism, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * @param heapBudget in bytes
+     */
+    public BatchPreflight(Supplier<Preflight> factory, int parallelism, long heapBudget)
+    {
+        this.factory = factory;
+        this.parallelism = parallelism;
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * Validates every document of the stream, the results are passed to the consumer as each document completes.
+     *
+     * The consumer is never called concurrently. Returns when every document has been validated.
+     */
+    public void validate(Stream<Path> paths, Consumer<BatchResult> consumer) throws InterruptedException
+    {
+        // Semaphores count ints, the budget is counted in KiB
+        int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(1, heapBudget / 1024));
+        Semaphore memory = new Semaphore(budget);
+        Semaphore slots = new Semaphore(parallelism);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "preflight-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        ThreadLocal<Preflight> preflights = ThreadLocal.withInitial(() -> {
+            Preflight preflight = factory.get();
+            preflight.setMemoryPolicy(memoryPolicy);
+
+            return preflight;
+        });
+
+        try {
+            Iterator<Path> iterator = paths.iterator();
+
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                // Admission only looks at the file size, the pages and images are counted once the worker loaded it
+                DocumentEstimate admitted = DocumentEstimate.of(path.toFile());
+                int permits = getPermits(admitted, budget);
+
+                slots.acquire();
+
+                try {
+                    memory.acquire(permits);
+                } catch (InterruptedException e) {
+                    slots.release();
+
+                    throw e;
+                }
+
+                executor.execute(() -> {
+                    long start = System.currentTimeMillis();
+                    AtomicReference<DocumentEstimate> estimate = new AtomicReference<>(admitted);
+                    int[] held = {permits};
+
+                    try {
+                        PreflightResult result = preflights.get().execute(path.toFile(), null, document -> {
+                            estimate.set(DocumentEstimate.of(path.toFile(), document));
+                            reserve(memory, held, getPermits(estimate.get(), budget));
+                        });
+
+                        emit(consumer, new BatchResult(path, estimate.get(), result, null, System.currentTimeMillis() - start));
+                    } catch (IOException | RuntimeException e) {
+                        // A broken document must not take the batch down
+                        emit(consumer, new BatchResult(path, estimate.get(), null, e, System.currentTimeMillis() - start));
+                    } finally {
+                        memory.release(held[0]);
+                        slots.release();
+                    }
+                });
+            }
+
+            // Every slot is free once the last document is done
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy)
+    {
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    private int getPermits(DocumentEstimate estimate, int budget)
+    {
+        return (int) Math.min(budget, Math.max(1, estimate.getHeapBytes(memoryPolicy) / 1024));
+    }
+
+    /**
+     * Grows the held permits (held[0]) to the needed ones.
+     *
+     * A worker never waits while it holds permits, the workers could wait for each other forever:
+     * when the missing permits are not free, the held ones are released and the whole amount is waited for.
+     */
+    private void reserve(Semaphore memory, int[] held, int needed)
+    {
+        if (needed <= held[0]) {
+            return;
+        }
+
+        if (!memory.tryAcquire(needed - held[0])) {
+            memory.release(held[0]);
+            held[0] = 0;
+
+            try {
+                memory.acquire(needed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new UncheckedIOException(new ValidationCancelledException("Interrupted while waiting for memory"));
+            }
+        }
+
+        held[0] = needed;
+    }
+
+    private void emit(Consumer<BatchResult> consumer, BatchResult result)
+    {
+        synchronized (consumer) {
+            consumer.accept(result);
+        }
+    }
+}
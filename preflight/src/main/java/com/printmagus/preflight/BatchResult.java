@@ -0,0 +1,60 @@
+package com.printmagus.preflight;
+
+import com.printmagus.preflight.util.DocumentEstimate;
+
+import java.nio.file.Path;
+
+/**
+ * The outcome of a single document of a batch, either a result or the error which prevented the validation.
+ */
+public class BatchResult
+{
+    private Path path;
+    private DocumentEstimate estimate;
+    private PreflightResult result;
+    private Exception error;
+    private Long time;
+
+    public BatchResult(Path path, DocumentEstimate estimate, PreflightResult result, Exception error, Long time)
+    {
+        this.path = path;
+        this.estimate = estimate;
+        this.result = result;
+        this.error = error;
+        this.time = time;
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * The estimate of the file size, with the pages and images if the document could be loaded.
+     */
+    public DocumentEstimate getEstimate()
+    {
+        return estimate;
+    }
+
+    /**
+     * Null if the validation failed, see {@link #getError()}.
+     */
+    public PreflightResult getResult()
+    {
+        return result;
+    }
+
+    public Exception getError()
+    {
+        return error;
+    }
+
+    /**
+     * Milliseconds spent validating the document, without the time it waited for admission.
+     */
+    public Long getTime()
+    {
+        return time;
+    }
+}
@@ -0,0 +1,66 @@
+package com.printmagus.preflight;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every verdict in a file of the directory, so they survive restarts and can be shared by processes.
+ *
+ * The files are written with Java serialization, only point this to a directory nobody else can write.
+ * Unreadable files (eg. written by an incompatible version) are treated as missing.
+ */
+public class DirectoryVerdictStore implements VerdictStore
+{
+    private final File directory;
+
+    public DirectoryVerdictStore(File directory)
+    {
+        this.directory = directory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Violation> get(String key) throws IOException
+    {
+        File file = new File(directory, key + ".verdict");
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (List<Violation>) input.readObject();
+        } catch (ClassNotFoundException | ObjectStreamException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The file is written under a temporary name and moved in place, readers never see a partial verdict.
+     */
+    @Override
+    public void put(String key, List<Violation> violations) throws IOException
+    {
+        Files.createDirectories(directory.toPath());
+
+        File temporary = File.createTempFile(key, ".tmp", directory);
+
+        try {
+            try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeObject(new ArrayList<>(violations));
+            }
+
+            Files.move(
+                temporary.toPath(),
+                new File(directory, key + ".verdict").toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+}
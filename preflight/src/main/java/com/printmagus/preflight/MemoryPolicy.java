@@ -0,0 +1,132 @@
+package com.printmagus.preflight;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where PDFBox keeps the stream data of a loaded document: on the heap, in a scratch file, or on the heap
+ * up to a limit and in a scratch file above it.
+ *
+ * The automatic policy picks the mode from the file size, small documents stay on the heap, big ones are
+ * capped and huge ones go to the scratch file entirely.
+ */
+public class MemoryPolicy
+{
+    public enum Mode
+    {
+        HEAP, SCRATCH, MIXED, AUTO
+    }
+
+    private static final long MB = 1024 * 1024;
+
+    private final Mode mode;
+    private final long maxHeapBytes;
+    private final long heapThreshold;
+    private final long scratchThreshold;
+    private File scratchDirectory;
+
+    private MemoryPolicy(Mode mode, long maxHeapBytes, long heapThreshold, long scratchThreshold)
+    {
+        this.mode = mode;
+        this.maxHeapBytes = maxHeapBytes;
+        this.heapThreshold = heapThreshold;
+        this.scratchThreshold = scratchThreshold;
+    }
+
+    public static MemoryPolicy heap()
+    {
+        return new MemoryPolicy(Mode.HEAP, -1, 0, 0);
+    }
+
+    public static MemoryPolicy scratch()
+    {
+        return new MemoryPolicy(Mode.SCRATCH, 0, 0, 0);
+    }
+
+    public static MemoryPolicy mixed(long maxHeapBytes)
+    {
+        return new MemoryPolicy(Mode.MIXED, maxHeapBytes, 0, 0);
+    }
+
+    /**
+     * Heap up to 32 MB, mixed with a 64 MB heap cap up to 1 GB, scratch file above.
+     */
+    public static MemoryPolicy auto()
+    {
+        return auto(32 * MB, 1024 * MB, 64 * MB);
+    }
+
+    public static MemoryPolicy auto(long heapThreshold, long scratchThreshold, long maxHeapBytes)
+    {
+        return new MemoryPolicy(Mode.AUTO, maxHeapBytes, heapThreshold, scratchThreshold);
+    }
+
+    /**
+     * The mode used for a file of this size, never AUTO.
+     */
+    public Mode resolve(long fileSize)
+    {
+        if (mode != Mode.AUTO) {
+            return mode;
+        }
+
+        if (fileSize <= heapThreshold) {
+            return Mode.HEAP;
+        }
+
+        return fileSize <= scratchThreshold ? Mode.MIXED : Mode.SCRATCH;
+    }
+
+    public MemoryUsageSetting createSetting(long fileSize)
+    {
+        MemoryUsageSetting setting;
+
+        switch (resolve(fileSize)) {
+            case SCRATCH:
+                setting = MemoryUsageSetting.setupTempFileOnly();
+                break;
+            case MIXED:
+                setting = MemoryUsageSetting.setupMixed(maxHeapBytes);
+                break;
+            default:
+                setting = MemoryUsageSetting.setupMainMemoryOnly();
+        }
+
+        if (scratchDirectory != null) {
+            setting.setTempDir(scratchDirectory);
+        }
+
+        return setting;
+    }
+
+    public PDDocument load(File file) throws IOException
+    {
+        return PDDocument.load(file, createSetting(file.length()));
+    }
+
+    /**
+     * The most stream data of a file of this size this policy keeps on the heap, in bytes.
+     */
+    public long getHeapLimit(long fileSize)
+    {
+        switch (resolve(fileSize)) {
+            case SCRATCH:
+                return 0;
+            case MIXED:
+                return Math.min(fileSize, maxHeapBytes);
+            default:
+                return fileSize;
+        }
+    }
+
+    /**
+     * Null means the system temp directory.
+     */
+    public void setScratchDirectory(File scratchDirectory)
+    {
+        this.scratchDirectory = scratchDirectory;
+    }
+}
@@ -0,0 +1,40 @@
+package com.printmagus.preflight;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the verdicts of the most recently used files in memory.
+ */
+public class MemoryVerdictStore implements VerdictStore
+{
+    private final Map<String, List<Violation>> verdicts;
+
+    public MemoryVerdictStore(int capacity)
+    {
+        this.verdicts = new LinkedHashMap<String, List<Violation>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Violation>> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public synchronized List<Violation> get(String key)
+    {
+        List<Violation> violations = verdicts.get(key);
+
+        return violations == null ? null : new ArrayList<>(violations);
+    }
+
+    @Override
+    public synchronized void put(String key, List<Violation> violations)
+    {
+        verdicts.put(key, new ArrayList<>(violations));
+    }
+}
@@ -0,0 +1,68 @@
+package com.printmagus.preflight;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Which pages a triage validates: the first pages, the last pages and a random page from each of
+ * equally sized strata of the pages in between.
+ *
+ * The same seed always selects the same pages.
+ */
+public class PageSample
+{
+    private int first;
+    private int last;
+    private int random;
+    private long seed;
+
+    public PageSample(int first, int last, int random)
+    {
+        this(first, last, random, 0);
+    }
+
+    public PageSample(int first, int last, int random, long seed)
+    {
+        this.first = first;
+        this.last = last;
+        this.random = random;
+        this.seed = seed;
+    }
+
+    /**
+     * The sampled page indexes in ascending order.
+     */
+    public int[] select(int pageCount)
+    {
+        TreeSet<Integer> pages = new TreeSet<>();
+
+        for (int i = 0; i < Math.min(first, pageCount); i++) {
+            pages.add(i);
+        }
+
+        for (int i = Math.max(0, pageCount - last); i < pageCount; i++) {
+            pages.add(i);
+        }
+
+        int from = Math.min(first, pageCount);
+        int to = Math.max(from, pageCount - last);
+        int strata = Math.min(random, to - from);
+        Random generator = new Random(seed);
+
+        for (int s = 0; s < strata; s++) {
+            int start = from + (int) ((long) (to - from) * s / strata);
+            int end = from + (int) ((long) (to - from) * (s + 1) / strata);
+
+            pages.add(start + generator.nextInt(end - start));
+        }
+
+        int[] result = new int[pages.size()];
+        int i = 0;
+
+        for (Integer page: pages) {
+            result[i++] = page;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,304 @@
+package com.printmagus.preflight;
+
+import com.printmagus.preflight.rule.*;
+import com.printmagus.preflight.util.Deadline;
+import com.printmagus.preflight.util.PageResourceCache;
+import com.printmagus.preflight.util.PreflightStreamEngine;
+import com.printmagus.preflight.util.ValidationBudget;
+import com.printmagus.preflight.util.ValidationCancelledException;
+import com.printmagus.preflight.util.ViolationPublisher;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups the rules by their scope and runs every phase once.
+ *
+ * The document phase calls every document level rule, then the pages are walked only once: for each page
+ * the page rules, the resource rules (with the resources resolved once) and the content stream of the page
+ * (for the XObject and operator rules) are processed together.
+ *
+ * Within a phase the rules run in the order of their cost, so when the budget is exhausted early
+ * the expensive rules are the ones which get skipped.
+ */
+public class PhaseScheduler
+{
+    private List<RuleInterface> documentRules = new ArrayList<>();
+    private List<PageValidator> pageValidators = new ArrayList<>();
+    private List<ResourceValidator> resourceValidators = new ArrayList<>();
+    private List<XObjectValidator> xObjectValidators = new ArrayList<>();
+    private List<ContentStreamValidator> contentStreamValidators = new ArrayList<>();
+    private List<RuleInterface> rules;
+    private ValidationBudget budget;
+    private ViolationPublisher publisher;
+    private boolean retainViolations = true;
+
+    public PhaseScheduler(List<RuleInterface> rules)
+    {
+        this(rules, ValidationBudget.unlimited());
+    }
+
+    public PhaseScheduler(List<RuleInterface> rules, ValidationBudget budget)
+    {
+        // List.sort() is stable, rules with the same cost keep their order
+        this.rules = new ArrayList<>(rules);
+        this.rules.sort(Comparator.comparingInt(RuleInterface::getCost));
+        this.budget = budget;
+
+        for (RuleInterface rule: this.rules) {
+            switch (getPhase(rule)) {
+                case PAGE:
+                    pageValidators.add((PageValidator) rule);
+                    break;
+                case RESOURCE:
+                    resourceValidators.add((ResourceValidator) rule);
+                    break;
+                case XOBJECT:
+                    xObjectValidators.add((XObjectValidator) rule);
+                    break;
+                case OPERATOR:
+                    contentStreamValidators.add((ContentStreamValidator) rule);
+                    break;
+                default:
+                    documentRules.add(rule);
+            }
+        }
+    }
+
+    /**
+     * The phase the rule runs in, its scope if it implements the validator interface of the scope.
+     *
+     * Otherwise it runs in the document phase, RuleInterface.validate() works for every scope.
+     */
+    public static RuleScope getPhase(RuleInterface rule)
+    {
+        switch (rule.getScope()) {
+            case PAGE:
+                return rule instanceof PageValidator ? RuleScope.PAGE : RuleScope.DOCUMENT;
+            case RESOURCE:
+                return rule instanceof ResourceValidator ? RuleScope.RESOURCE : RuleScope.DOCUMENT;
+            case XOBJECT:
+                return rule instanceof XObjectValidator ? RuleScope.XOBJECT : RuleScope.DOCUMENT;
+            case OPERATOR:
+                return rule instanceof ContentStreamValidator ? RuleScope.OPERATOR : RuleScope.DOCUMENT;
+            default:
+                return RuleScope.DOCUMENT;
+        }
+    }
+
+    /**
+     * A scheduler of other instances of the same rules, with the budget and the publisher of this one.
+     *
+     * Rules keep state during a validation, workers which validate a part of the pages on their own copy of
+     * the document use their own rules.
+     */
+    public PhaseScheduler withRules(List<RuleInterface> rules)
+    {
+        PhaseScheduler scheduler = new PhaseScheduler(rules, budget);
+
+        scheduler.setPublisher(publisher);
+        scheduler.setRetainViolations(retainViolations);
+
+        return scheduler;
+    }
+
+    /**
+     * Runs the document phase, and registers the XObject and operator rules on the stream engine.
+     */
+    public List<Violation> validateDocument(ValidationContext context, PreflightStreamEngine engine)
+    {
+        List<Violation> violations = new ArrayList<>();
+
+        prepare(context, engine);
+
+        for (RuleInterface rule: documentRules) {
+            if (budget.isExhausted()) {
+                if (budget.isTimedOut()) {
+                    budget.ruleTimedOut(rule.getClass().getSimpleName());
+                }
+
+                continue;
+            }
+
+            Deadline deadline = budget.createRuleDeadline(budget.getDeadline());
+            Deadline previous = Deadline.enter(deadline);
+
+            try {
+                List<Violation> ruleViolations = rule.validate(context.getDocument());
+
+                budget.record(ruleViolations);
+
+                if (retainViolations) {
+                    violations.addAll(ruleViolations);
+                }
+
+                if (publisher != null) {
+                    publisher.publish(ruleViolations);
+                }
+            } finally {
+                Deadline.restore(previous);
+            }
+
+            if (deadline.isExpired()) {
+                budget.ruleTimedOut(rule.getClass().getSimpleName());
+            }
+        }
+
+        return violations;
+    }
+
+    /**
+     * Sets the context and the stream engine of the rules, and registers the XObject and operator rules on
+     * the stream engine, without running the document phase.
+     */
+    public void prepare(ValidationContext context, PreflightStreamEngine engine)
+    {
+        for (RuleInterface rule: rules) {
+            rule.setStreamEngine(engine);
+            rule.setContext(context);
+        }
+
+        engine.setBudget(budget);
+        engine.setPublisher(publisher);
+        engine.setRetainViolations(retainViolations);
+
+        for (XObjectValidator validator: xObjectValidators) {
+            engine.addValidator(validator);
+        }
+
+        for (ContentStreamValidator validator: contentStreamValidators) {
+            engine.addValidator(validator);
+        }
+    }
+
+    /**
+     * Runs the page phases on the pages [from, to).
+     *
+     * The violations are collected by the stream engine, in page order. The remaining pages are
+     * skipped once the budget is exhausted.
+     */
+    public void validatePages(PDDocument document, int from, int to, PreflightStreamEngine engine)
+    {
+        ResourceCache cache = document.getResourceCache();
+
+        int i = 0;
+        for (PDPage page: document.getPages()) {
+            if (i >= to || budget.isExhausted()) {
+                break;
+            }
+
+            if (i >= from) {
+                validatePage(page, i, engine);
+
+                // Lazy mode, the resources of the page are not needed anymore
+                if (cache instanceof PageResourceCache) {
+                    ((PageResourceCache) cache).clear();
+                }
+            }
+
+            i++;
+        }
+
+        skipPages(Math.max(i, from), to);
+    }
+
+    /**
+     * Runs the page phases on the given pages, in ascending order.
+     */
+    public void validatePages(PDDocument document, int[] pageIndexes, PreflightStreamEngine engine)
+    {
+        ResourceCache cache = document.getResourceCache();
+
+        for (int n = 0; n < pageIndexes.length; n++) {
+            if (budget.isExhausted()) {
+                if (budget.isTimedOut()) {
+                    for (int i = n; i < pageIndexes.length; i++) {
+                        budget.pageTimedOut(pageIndexes[i]);
+                    }
+                }
+
+                break;
+            }
+
+            // PDPageTree.get() descends by the page counts of the tree nodes, without walking the previous pages
+            validatePage(document.getPage(pageIndexes[n]), pageIndexes[n], engine);
+
+            if (cache instanceof PageResourceCache) {
+                ((PageResourceCache) cache).clear();
+            }
+        }
+    }
+
+    /**
+     * Pages which are not validated because the validation ran out of time are reported as timed out.
+     */
+    public void skipPages(int from, int to)
+    {
+        if (!budget.isTimedOut()) {
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            budget.pageTimedOut(i);
+        }
+    }
+
+    public ValidationBudget getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Publishes the violations of every document rule and page as soon as they are found.
+     */
+    public void setPublisher(ViolationPublisher publisher)
+    {
+        this.publisher = publisher;
+    }
+
+    public void setRetainViolations(boolean retainViolations)
+    {
+        this.retainViolations = retainViolations;
+    }
+
+    private void validatePage(PDPage page, Integer pageIndex, PreflightStreamEngine engine)
+    {
+        List<Violation> violations = new ArrayList<>();
+
+        for (PageValidator validator: pageValidators) {
+            validator.validatePage(page, pageIndex, violations);
+        }
+
+        if (!resourceValidators.isEmpty()) {
+            PDResources resources = page.getResources();
+
+            if (resources != null) {
+                for (ResourceValidator validator: resourceValidators) {
+                    validator.validateResources(resources, page, pageIndex, violations);
+                }
+            }
+        }
+
+        // Before any operator of the page
+        budget.record(violations);
+        engine.getSink().addAll(0, -1, violations);
+
+        try {
+            engine.processPage(page, pageIndex);
+        } catch (ValidationCancelledException e) {
+            // The page was cut short by the deadline of the whole validation, or the budget was exhausted
+            if (budget.isTimedOut()) {
+                budget.pageTimedOut(pageIndex);
+            }
+        } catch (IOException e) {
+            // Eg. a corrupt content stream, the rest of the page was not validated
+            budget.pageFailed(pageIndex);
+        }
+    }
+}
@@ -1,54 +1,734 @@
 package com.printmagus.preflight;
 
 import com.printmagus.preflight.rule.RuleInterface;
+import com.printmagus.preflight.rule.RuleScope;
 import com.printmagus.preflight.standard.StandardInterface;
+import com.printmagus.preflight.util.FileDigest;
+import com.printmagus.preflight.util.ImageAnalysisCache;
+import com.printmagus.preflight.util.IncrementalUpdate;
+import com.printmagus.preflight.util.PageResourceCache;
+import com.printmagus.preflight.util.PortableViolations;
 import com.printmagus.preflight.util.PreflightStreamEngine;
+import com.printmagus.preflight.util.ValidationBudget;
+import com.printmagus.preflight.util.ViolationPublisher;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.documentinterchange.taggedpdf.PDPrintFieldAttributeObject;
+import org.apache.pdfbox.pdmodel.ResourceCache;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class Preflight implements PreflightInterface
 {
     private List<RuleInterface> rules = new ArrayList<>();
+    private Supplier<List<RuleInterface>> ruleFactory;
     private PreflightStreamEngine streamEngine;
+    private Integer parallelism = 1;
+    private ForkJoinPool pool;
+    private Integer maxViolations;
+    private Set<String> failFastRules = new HashSet<>();
+    private Long timeout;
+    private Long pageTimeout;
+    private Long ruleTimeout;
+    private MemoryPolicy memoryPolicy = MemoryPolicy.auto();
+    private Boolean lazy = false;
+    private ImageAnalysisCache imageAnalysisCache;
+    private VerdictStore verdictStore;
+    private Boolean incremental = false;
+    private volatile CompletableFuture<PreflightResult> triageRun;
 
     public List<Violation> validate(PDDocument document)
     {
-        if (streamEngine == null) {
-            streamEngine = new PreflightStreamEngine();
+        return execute(document).getViolations();
+    }
+
+    /**
+     * Validates a document loaded from the file.
+     *
+     * @see #execute(File)
+     */
+    public List<Violation> validate(File file) throws IOException
+    {
+        return execute(file).getViolations();
+    }
+
+    /**
+     * Like validate(), but the result also tells which pages and rules timed out.
+     */
+    public PreflightResult execute(PDDocument document)
+    {
+        return execute(document, null);
+    }
+
+    /**
+     * Streams the violations to the listener while the document is validated.
+     *
+     * With a listener the violations are not retained, the returned result only contains the timeouts.
+     */
+    public PreflightResult execute(PDDocument document, ViolationListener listener)
+    {
+        checkIdle();
+
+        return executeDocument(document, listener);
+    }
+
+    private PreflightResult executeDocument(PDDocument document, ViolationListener listener)
+    {
+        ValidationContext context = new ValidationContext(document);
+        PreflightStreamEngine engine = createStreamEngine();
+        PhaseScheduler scheduler = createScheduler(listener);
+
+        List<Violation> violations = scheduler.validateDocument(context, engine);
+
+        // The document belongs to the caller, its own cache is put back
+        ResourceCache cache = document.getResourceCache();
+
+        try {
+            if (lazy) {
+                document.setResourceCache(new PageResourceCache());
+            }
+
+            scheduler.validatePages(document, 0, context.getPageCount(), engine);
+        } finally {
+            document.setResourceCache(cache);
         }
 
-        List<Violation> violations = new ArrayList<>();
+        violations.addAll(engine.getViolations());
+
+        return createResult(violations, scheduler.getBudget());
+    }
+
+    /**
+     * Validates a document loaded from the file.
+     *
+     * When the parallelism is greater than one and a rule factory is set, the page phases are split into
+     * page ranges and processed on the fork-join pool. COS objects are not thread safe, so every worker
+     * loads its own copy of the document (the file is parsed once more per worker, which costs parse time and
+     * heap for each) and gets its own rules from the factory. The violations are merged in page order.
+     */
+    public PreflightResult execute(File file) throws IOException
+    {
+        return execute(file, null);
+    }
+
+    /**
+     * @see #execute(File)
+     * @see #execute(PDDocument, ViolationListener)
+     */
+    public PreflightResult execute(File file, ViolationListener listener) throws IOException
+    {
+        return execute(file, listener, null);
+    }
+
+    /**
+     * The consumer is called with the loaded document before it is validated (not for a cached verdict),
+     * BatchPreflight uses it to refine the heap estimate without parsing the file twice.
+     */
+    PreflightResult execute(File file, ViolationListener listener, Consumer<PDDocument> loaded) throws IOException
+    {
+        checkIdle();
+
+        return executeFile(file, listener, loaded);
+    }
+
+    private PreflightResult executeFile(File file, ViolationListener listener, Consumer<PDDocument> loaded)
+        throws IOException
+    {
+        return verdictStore == null ? validateFile(file, listener, loaded) : validateCached(file, listener, loaded);
+    }
+
+    /**
+     * Validates the file again after incremental updates were appended to it, eg. by a metadata change.
+     *
+     * The previous result must come from this file before the updates, validated in incremental mode with
+     * the same rules. The document rules and the pages which reach an added or replaced object are validated,
+     * the violations of the other pages are carried forward. Anything else (the file was rewritten, pages were
+     * added or moved, the previous result is partial) falls back to a full validation.
+     */
+    public PreflightResult revalidate(PreflightResult previous, File file) throws IOException
+    {
+        checkIdle();
+
+        SourceSnapshot source = previous.getSource();
+        String fingerprint = getFingerprint();
+
+        boolean reusable = source != null
+            && !previous.isPartial()
+            && !previous.isStopped()
+            && !previous.isProvisional()
+            && source.getFingerprint().equals(fingerprint)
+            && file.length() >= source.getLength()
+            && FileDigest.of(file, source.getLength()).equals(source.getDigest());
+
+        if (!reusable) {
+            return execute(file);
+        }
+
+        try (PDDocument document = memoryPolicy.load(file)) {
+            // Pages were added, removed or moved, the page indexes of the previous result can not be trusted
+            if (!IncrementalUpdate.getPageObjects(document).equals(source.getPageObjects())) {
+                return execute(file);
+            }
+
+            IncrementalUpdate update = IncrementalUpdate.of(document, source.getLength());
+            List<String> inherited = IncrementalUpdate.getInheritedAttributes(document);
+
+            ValidationContext context = new ValidationContext(document);
+            PreflightStreamEngine engine = createStreamEngine();
+            PhaseScheduler scheduler = createScheduler(null);
+            List<Integer> affected = new ArrayList<>();
+
+            int i = 0;
+            for (PDPage page: document.getPages()) {
+                if (update.isPageAffected(page) || !inherited.get(i).equals(source.getInheritedAttributes().get(i))) {
+                    affected.add(i);
+                }
+
+                i++;
+            }
+
+            List<Violation> violations = scheduler.validateDocument(context, engine);
+
+            if (lazy) {
+                document.setResourceCache(new PageResourceCache());
+            }
+
+            int[] pages = new int[affected.size()];
+
+            for (int n = 0; n < pages.length; n++) {
+                pages[n] = affected.get(n);
+            }
+
+            scheduler.validatePages(document, pages, engine);
+
+            violations.addAll(carryForward(previous.getViolations(), engine.getViolations(), affected, i));
+
+            PreflightResult result = createResult(violations, scheduler.getBudget());
+
+            result.setSource(createSnapshot(file, document));
+            result.setRevalidatedPages(affected);
+
+            return result;
+        }
+    }
+
+    /**
+     * Merges the new violations of the affected pages with the previous violations of the other pages,
+     * in page order. Previous violations of document rules are dropped, the document phase ran again.
+     */
+    private List<Violation> carryForward(
+        List<Violation> previous,
+        List<Violation> revalidated,
+        List<Integer> affected,
+        int pageCount
+    )
+    {
+        Set<String> documentRules = new HashSet<>();
 
         for (RuleInterface rule: rules) {
-            rule.setStreamEngine(streamEngine);
+            if (PhaseScheduler.getPhase(rule) == RuleScope.DOCUMENT) {
+                documentRules.add(rule.getClass().getSimpleName());
+            }
+        }
+
+        Set<Integer> affectedPages = new HashSet<>(affected);
+        List<List<Violation>> pages = new ArrayList<>();
+        List<Violation> unknown = new ArrayList<>();
 
-            violations.addAll(rule.validate(document));
+        for (int i = 0; i < pageCount; i++) {
+            pages.add(new ArrayList<>());
         }
 
-        for (PDPage page: document.getPages()) {
-            try {
-                streamEngine.processPage(page);
-            } catch (IOException e) {
-                //
+        for (Violation violation: previous) {
+            Integer page = violation.getPage();
+
+            if (documentRules.contains(violation.getRule()) || (page != null && affectedPages.contains(page))) {
+                continue;
             }
+
+            if (page == null || page < 0 || page >= pageCount) {
+                unknown.add(violation);
+            } else {
+                pages.get(page).add(violation);
+            }
+        }
+
+        for (Violation violation: revalidated) {
+            pages.get(violation.getPage()).add(violation);
         }
 
-        violations.addAll(streamEngine.getViolations());
+        List<Violation> violations = new ArrayList<>();
+
+        for (List<Violation> page: pages) {
+            violations.addAll(page);
+        }
+
+        violations.addAll(unknown);
 
         return violations;
     }
 
+    private PreflightResult validateCached(File file, ViolationListener listener, Consumer<PDDocument> loaded)
+        throws IOException
+    {
+        String key = getVerdictKey(file);
+        List<Violation> cached = verdictStore.get(key);
+
+        // The verdict is replayed through a budget like a live run, no document is loaded for the consumer
+        if (cached != null) {
+            ValidationBudget budget = createBudget();
+            List<Violation> violations = new ArrayList<>(cached);
+
+            budget.record(violations);
+
+            if (listener != null) {
+                new ViolationPublisher(listener, budget).publish(violations);
+                violations = new ArrayList<>();
+            }
+
+            return createResult(violations, budget);
+        }
+
+        // With a listener the violations are not retained, they are collected on their way to the listener
+        List<Violation> published = new ArrayList<>();
+        ViolationListener collector = listener == null ? null : violation -> {
+            published.add(violation);
+
+            return listener.onViolation(violation);
+        };
+
+        PreflightResult result = validateFile(file, collector, loaded);
+
+        // Results cut short depend on timing and limits, only complete verdicts are kept
+        if (!result.isPartial() && !result.isStopped()) {
+            verdictStore.put(key, PortableViolations.of(listener == null ? result.getViolations() : published));
+        }
+
+        return result;
+    }
+
+    private PreflightResult validateFile(File file, ViolationListener listener, Consumer<PDDocument> loaded)
+        throws IOException
+    {
+        PDDocument document = memoryPolicy.load(file);
+
+        try {
+            if (loaded != null) {
+                loaded.accept(document);
+            }
+
+            PreflightResult result = validateFile(file, document, listener);
+
+            // The violations of a listener run were not retained, they can not be carried forward
+            if (incremental && listener == null) {
+                result.setSource(createSnapshot(file, document));
+            }
+
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            document.close();
+        }
+    }
+
+    private PreflightResult validateFile(File file, PDDocument document, ViolationListener listener)
+    {
+        // Rules keep state during a validation, they can not be shared by the workers
+        if (parallelism <= 1 || ruleFactory == null) {
+            return executeDocument(document, listener);
+        }
+
+        ValidationContext context = new ValidationContext(document);
+        PreflightStreamEngine engine = createStreamEngine();
+        PhaseScheduler scheduler = createScheduler(listener);
+
+        List<Violation> violations = scheduler.validateDocument(context, engine);
+
+        int pages = context.getPageCount();
+        int chunk = Math.max(1, (pages + parallelism - 1) / parallelism);
+
+        violations.addAll(getPool().invoke(new PageRange(file, scheduler, 0, pages, chunk)));
+
+        return createResult(violations, scheduler.getBudget());
+    }
+
+    private SourceSnapshot createSnapshot(File file, PDDocument document) throws IOException
+    {
+        return new SourceSnapshot(
+            file.length(),
+            FileDigest.of(file),
+            getFingerprint(),
+            IncrementalUpdate.getPageObjects(document),
+            IncrementalUpdate.getInheritedAttributes(document)
+        );
+    }
+
+    /**
+     * Validates the document rules and a sample of the pages, then starts the full validation in the background.
+     *
+     * The latency target (in milliseconds, null for none) is the deadline of the sample. With a rule factory
+     * the full validation gets its own rules. Otherwise it uses the rules of this instance, and any validation
+     * started with this instance before the result is complete throws an IllegalStateException.
+     */
+    public TriageResult triage(File file, PageSample sample, Long latencyTarget) throws IOException
+    {
+        checkIdle();
+
+        PreflightResult provisional;
+
+        try (PDDocument document = memoryPolicy.load(file)) {
+            ValidationContext context = new ValidationContext(document);
+            PreflightStreamEngine engine = createStreamEngine();
+            ValidationBudget budget = createBudget();
+
+            if (latencyTarget != null) {
+                budget.setTimeout(timeout == null ? latencyTarget : Math.min(timeout, latencyTarget));
+            }
+
+            PhaseScheduler scheduler = new PhaseScheduler(rules, budget);
+
+            List<Violation> violations = scheduler.validateDocument(context, engine);
+            int[] pages = sample.select(context.getPageCount());
+
+            if (lazy) {
+                document.setResourceCache(new PageResourceCache());
+            }
+
+            scheduler.validatePages(document, pages, engine);
+            violations.addAll(engine.getViolations());
+
+            List<Integer> sampledPages = new ArrayList<>();
+
+            for (int page: pages) {
+                sampledPages.add(page);
+            }
+
+            PreflightResult result = createResult(violations, budget);
+
+            provisional = new PreflightResult(
+                result.getViolations(),
+                result.getTimedOutPages(),
+                result.getTimedOutRules(),
+                result.isTimedOut(),
+                sampledPages
+            );
+
+            provisional.setStopped(result.isStopped());
+            provisional.setFailedPages(result.getFailedPages());
+            provisional.setFailedRules(result.getFailedRules());
+        }
+
+        Preflight background = ruleFactory == null ? this : copy(ruleFactory.get());
+
+        CompletableFuture<PreflightResult> result = CompletableFuture.supplyAsync(
+            () -> {
+                try {
+                    return background.executeFile(file, null, null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            },
+            runnable -> {
+                Thread thread = new Thread(runnable, "preflight-triage");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        );
+
+        if (background == this) {
+            triageRun = result;
+        }
+
+        return new TriageResult(provisional, result);
+    }
+
+    /**
+     * The rules of this instance are used by the full validation of a triage until it is complete.
+     */
+    private void checkIdle()
+    {
+        CompletableFuture<PreflightResult> run = triageRun;
+
+        if (run != null && !run.isDone()) {
+            throw new IllegalStateException("The rules are used by the full validation of a triage");
+        }
+    }
+
+    /**
+     * Another instance with the same configuration and the given rules.
+     */
+    private Preflight copy(List<RuleInterface> rules)
+    {
+        Preflight preflight = new Preflight();
+
+        preflight.rules = new ArrayList<>(rules);
+        preflight.ruleFactory = ruleFactory;
+        preflight.streamEngine = streamEngine;
+        preflight.parallelism = parallelism;
+        preflight.pool = parallelism > 1 ? getPool() : null;
+        preflight.maxViolations = maxViolations;
+        preflight.failFastRules = failFastRules;
+        preflight.timeout = timeout;
+        preflight.pageTimeout = pageTimeout;
+        preflight.ruleTimeout = ruleTimeout;
+        preflight.memoryPolicy = memoryPolicy;
+        preflight.lazy = lazy;
+        preflight.imageAnalysisCache = imageAnalysisCache;
+        preflight.verdictStore = verdictStore;
+        preflight.incremental = incremental;
+
+        return preflight;
+    }
+
+    /**
+     * The configured stream engine is only used as a prototype, every validation gets a fresh copy.
+     */
+    private PreflightStreamEngine createStreamEngine()
+    {
+        PreflightStreamEngine engine = streamEngine == null ? new PreflightStreamEngine() : streamEngine.copy();
+
+        if (imageAnalysisCache != null) {
+            engine.setImageAnalysisCache(imageAnalysisCache);
+        }
+
+        return engine;
+    }
+
+    /**
+     * Threads which were already running may overshoot the budget a little, the violations are cut to the limit.
+     */
+    private PreflightResult createResult(List<Violation> violations, ValidationBudget budget)
+    {
+        if (maxViolations != null && violations.size() > maxViolations) {
+            violations = new ArrayList<>(violations.subList(0, maxViolations));
+        }
+
+        PreflightResult result = new PreflightResult(
+            violations,
+            budget.getTimedOutPages(),
+            budget.getTimedOutRules(),
+            budget.hasTimedOut()
+        );
+
+        result.setStopped(budget.isStopped());
+        result.setFailedPages(budget.getFailedPages());
+        result.setFailedRules(budget.getFailedRules());
+
+        return result;
+    }
+
+    /**
+     * A digest of the content of the file and of everything in the configuration which changes the violations.
+     */
+    private String getVerdictKey(File file) throws IOException
+    {
+        return FileDigest.of(FileDigest.of(file) + "\n" + getFingerprint());
+    }
+
+    /**
+     * A digest of the fingerprints of the rules and of the limits.
+     */
+    @SuppressWarnings("deprecation")
+    private String getFingerprint() throws IOException
+    {
+        StringBuilder configuration = new StringBuilder();
+
+        for (RuleInterface rule: rules) {
+            configuration.append(rule.getFingerprint()).append('\n');
+        }
+
+        configuration.append(maxViolations).append('\n');
+        configuration.append(new TreeSet<>(failFastRules)).append('\n');
+        configuration.append(streamEngine == null ? null : streamEngine.getMaxImageArea()).append('\n');
+
+        return FileDigest.of(configuration.toString());
+    }
+
+    private PhaseScheduler createScheduler(ViolationListener listener)
+    {
+        ValidationBudget budget = createBudget();
+        PhaseScheduler scheduler = new PhaseScheduler(rules, budget);
+
+        if (listener != null) {
+            scheduler.setPublisher(new ViolationPublisher(listener, budget));
+            scheduler.setRetainViolations(false);
+        }
+
+        return scheduler;
+    }
+
+    private ValidationBudget createBudget()
+    {
+        ValidationBudget budget = new ValidationBudget(
+            maxViolations == null ? Integer.MAX_VALUE : maxViolations,
+            failFastRules
+        );
+
+        budget.setTimeout(timeout);
+        budget.setPageTimeout(pageTimeout);
+        budget.setRuleTimeout(ruleTimeout);
+
+        return budget;
+    }
+
+    private ForkJoinPool getPool()
+    {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
     @Override
     public void setStreamEngine(PreflightStreamEngine engine)
     {
         streamEngine = engine;
     }
 
+    /**
+     * The number of workers of a validation of a file, only used with a rule factory.
+     *
+     * @see #execute(File)
+     */
+    public void setParallelism(Integer parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Stops the validation once this many violations were found, null means no limit.
+     *
+     * The result contains the violations found until then, the remaining pages are not validated.
+     */
+    public void setMaxViolations(Integer maxViolations)
+    {
+        this.maxViolations = maxViolations;
+    }
+
+    /**
+     * Stops the validation on the first violation of any of these rules (eg. "NoEncryption").
+     */
+    public void setFailFastRules(Collection<String> failFastRules)
+    {
+        this.failFastRules = new HashSet<>(failFastRules);
+    }
+
+    /**
+     * Deadline of the whole validation in milliseconds, null means no deadline.
+     *
+     * The result contains the violations found until then, see {@link PreflightResult#isPartial()}.
+     */
+    public void setTimeout(Long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Deadline of the content stream of a single page, including its XObjects, in milliseconds.
+     */
+    public void setPageTimeout(Long pageTimeout)
+    {
+        this.pageTimeout = pageTimeout;
+    }
+
+    /**
+     * Deadline of a single run of a document or XObject rule in milliseconds.
+     *
+     * Rules are stopped cooperatively, a rule which never checks its deadline is only reported as timed out.
+     */
+    public void setRuleTimeout(Long ruleTimeout)
+    {
+        this.ruleTimeout = ruleTimeout;
+    }
+
+    /**
+     * How documents validated from a file are loaded, picked from the file size by default.
+     */
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy)
+    {
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    public MemoryPolicy getMemoryPolicy()
+    {
+        return memoryPolicy;
+    }
+
+    /**
+     * In lazy mode the fonts, color spaces and XObjects of a page are released once the page is validated,
+     * instead of staying cached for the whole document. The page cache is installed after the document phase,
+     * a document passed to {@link #execute(PDDocument, ViolationListener)} gets its own cache back afterwards.
+     *
+     * PDFBox 2.0 parses the COS objects of the document when it is loaded, combine this with
+     * {@link MemoryPolicy#scratch()} to keep the stream data off the heap as well.
+     */
+    public void setLazy(Boolean lazy)
+    {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Image analysis results are kept in this cache, so images which were seen before are not decoded again.
+     *
+     * The cache can be shared by several instances, it is not closed by the validation.
+     */
+    public void setImageAnalysisCache(ImageAnalysisCache imageAnalysisCache)
+    {
+        this.imageAnalysisCache = imageAnalysisCache;
+    }
+
+    /**
+     * Verdicts of files validated before are served from the store, without parsing the file.
+     *
+     * The key is a digest of the file and of the fingerprints of the rules, only complete results are stored.
+     * Served violations carry plain context values (see {@link PortableViolations}), and validations of a
+     * PDDocument do not use the store.
+     */
+    public void setVerdictStore(VerdictStore verdictStore)
+    {
+        this.verdictStore = verdictStore;
+    }
+
+    /**
+     * Results of validated files remember the length and the digest of the file, so they can be
+     * revalidated after incremental updates, see {@link #revalidate}.
+     */
+    public void setIncremental(Boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Creates a new set of the same rules every time it is called, it replaces the rules added before.
+     *
+     * Rules keep state during a validation, so every worker of a parallel validation gets its own rules
+     * from the factory, see {@link #setParallelism(Integer)}.
+     */
+    public void setRuleFactory(Supplier<List<RuleInterface>> ruleFactory)
+    {
+        this.ruleFactory = ruleFactory;
+        this.rules = new ArrayList<>(ruleFactory.get());
+    }
+
     public List<RuleInterface> getRules()
     {
         return rules;
@@ -63,4 +743,68 @@ public class Preflight implements PreflightInterface
     {
         this.rules.addAll(standard.getRules());
     }
+
+    /**
+     * Runs the page phases of [from, to) with its own copy of the document, stream engine and rules.
+     */
+    private class PageRange extends RecursiveTask<List<Violation>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final PhaseScheduler scheduler;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        PageRange(File file, PhaseScheduler scheduler, int from, int to, int chunk)
+        {
+            this.file = file;
+            this.scheduler = scheduler;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected List<Violation> compute()
+        {
+            if (to - from > chunk) {
+                int middle = from + (to - from) / 2;
+
+                PageRange left = new PageRange(file, scheduler, from, middle, chunk);
+                PageRange right = new PageRange(file, scheduler, middle, to, chunk);
+
+                right.fork();
+
+                List<Violation> violations = left.compute();
+                violations.addAll(right.join());
+
+                return violations;
+            }
+
+            if (scheduler.getBudget().isExhausted()) {
+                scheduler.skipPages(from, to);
+
+                return new ArrayList<>();
+            }
+
+            PreflightStreamEngine worker = createStreamEngine();
+            PhaseScheduler workerScheduler = scheduler.withRules(ruleFactory.get());
+
+            try (PDDocument document = memoryPolicy.load(file)) {
+                workerScheduler.prepare(new ValidationContext(document), worker);
+
+                if (lazy) {
+                    document.setResourceCache(new PageResourceCache());
+                }
+
+                workerScheduler.validatePages(document, from, to, worker);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return worker.getViolations();
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package com.printmagus.preflight;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The violations of a validation, and what was not fully validated.
+ *
+ * A result is partial when the validation ran out of time or a part of it failed: the violations are the ones
+ * found until then, the timed out and failed pages and rules tell which parts of the document could still
+ * contain more.
+ */
+public class PreflightResult
+{
+    private List<Violation> violations;
+    private List<Integer> timedOutPages;
+    private List<String> timedOutRules;
+    private List<Integer> failedPages = new ArrayList<>();
+    private List<String> failedRules = new ArrayList<>();
+    private Boolean timedOut;
+    private Boolean provisional = false;
+    private List<Integer> sampledPages;
+    private Boolean stopped = false;
+    private SourceSnapshot source;
+    private List<Integer> revalidatedPages;
+
+    public PreflightResult(
+        List<Violation> violations,
+        List<Integer> timedOutPages,
+        List<String> timedOutRules,
+        Boolean timedOut
+    )
+    {
+        this.violations = violations;
+        this.timedOutPages = timedOutPages;
+        this.timedOutRules = timedOutRules;
+        this.timedOut = timedOut;
+    }
+
+    public PreflightResult(
+        List<Violation> violations,
+        List<Integer> timedOutPages,
+        List<String> timedOutRules,
+        Boolean timedOut,
+        List<Integer> sampledPages
+    )
+    {
+        this(violations, timedOutPages, timedOutRules, timedOut);
+
+        this.provisional = true;
+        this.sampledPages = sampledPages;
+    }
+
+    public List<Violation> getViolations()
+    {
+        return violations;
+    }
+
+    /**
+     * Indexes of the pages which were cut short or not validated at all, -1 stands for an unknown page.
+     */
+    public List<Integer> getTimedOutPages()
+    {
+        return timedOutPages;
+    }
+
+    /**
+     * Names of the rules which did not finish in time, at least once.
+     */
+    public List<String> getTimedOutRules()
+    {
+        return timedOutRules;
+    }
+
+    /**
+     * Indexes of the pages which could not be fully validated because of an error (eg. a corrupt content
+     * stream or image), -1 stands for an unknown page.
+     */
+    public List<Integer> getFailedPages()
+    {
+        return failedPages;
+    }
+
+    void setFailedPages(List<Integer> failedPages)
+    {
+        this.failedPages = failedPages;
+    }
+
+    /**
+     * Names of the rules which failed with an error, at least once.
+     */
+    public List<String> getFailedRules()
+    {
+        return failedRules;
+    }
+
+    void setFailedRules(List<String> failedRules)
+    {
+        this.failedRules = failedRules;
+    }
+
+    /**
+     * True if the deadline of the whole validation cut a page or rule short.
+     */
+    public Boolean isTimedOut()
+    {
+        return timedOut;
+    }
+
+    /**
+     * True for the result of a triage, only the sampled pages were validated.
+     */
+    public Boolean isProvisional()
+    {
+        return provisional;
+    }
+
+    /**
+     * The pages validated by a triage, null when every page was validated.
+     */
+    public List<Integer> getSampledPages()
+    {
+        return sampledPages;
+    }
+
+    /**
+     * True if the validation stopped before the end, on the violation limit, a fail-fast rule or a listener.
+     */
+    public Boolean isStopped()
+    {
+        return stopped;
+    }
+
+    void setStopped(Boolean stopped)
+    {
+        this.stopped = stopped;
+    }
+
+    /**
+     * The file the result was validated from, null unless incremental mode was enabled.
+     */
+    public SourceSnapshot getSource()
+    {
+        return source;
+    }
+
+    void setSource(SourceSnapshot source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * The pages validated again by an incremental revalidation, null for a full validation.
+     *
+     * The violations of the other pages were carried forward from the previous result.
+     */
+    public List<Integer> getRevalidatedPages()
+    {
+        return revalidatedPages;
+    }
+
+    void setRevalidatedPages(List<Integer> revalidatedPages)
+    {
+        this.revalidatedPages = revalidatedPages;
+    }
+
+    public Boolean isPartial()
+    {
+        return timedOut
+            || !timedOutPages.isEmpty()
+            || !timedOutRules.isEmpty()
+            || !failedPages.isEmpty()
+            || !failedRules.isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+package com.printmagus.preflight;
+
+import java.util.List;
+
+/**
+ * The file a result was validated from, and the configuration it was validated with.
+ *
+ * Used to check that a file only had incremental updates appended since, see {@link Preflight#revalidate}.
+ */
+public class SourceSnapshot
+{
+    private final long length;
+    private final String digest;
+    private final String fingerprint;
+    private final List<Long> pageObjects;
+    private final List<String> inheritedAttributes;
+
+    public SourceSnapshot(
+        long length,
+        String digest,
+        String fingerprint,
+        List<Long> pageObjects,
+        List<String> inheritedAttributes
+    )
+    {
+        this.length = length;
+        this.digest = digest;
+        this.fingerprint = fingerprint;
+        this.pageObjects = pageObjects;
+        this.inheritedAttributes = inheritedAttributes;
+    }
+
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Hex encoded SHA-256 of the file.
+     */
+    public String getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Hex encoded SHA-256 of the fingerprints of the rules and the limits.
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * The object numbers of the pages, in page order.
+     */
+    public List<Long> getPageObjects()
+    {
+        return pageObjects;
+    }
+
+    /**
+     * Digests of the attributes each page inherits from the page tree, in page order.
+     */
+    public List<String> getInheritedAttributes()
+    {
+        return inheritedAttributes;
+    }
+}
@@ -0,0 +1,34 @@
+package com.printmagus.preflight;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A provisional result of a page sample, and the final result of the full validation running in the background.
+ */
+public class TriageResult
+{
+    private PreflightResult provisional;
+    private CompletableFuture<PreflightResult> result;
+
+    public TriageResult(PreflightResult provisional, CompletableFuture<PreflightResult> result)
+    {
+        this.provisional = provisional;
+        this.result = result;
+    }
+
+    /**
+     * Validated with the document rules and the sampled pages only, {@link PreflightResult#isProvisional()} is true.
+     */
+    public PreflightResult getProvisional()
+    {
+        return provisional;
+    }
+
+    /**
+     * Completes when the full validation is done, exceptionally if the document could not be validated.
+     */
+    public CompletableFuture<PreflightResult> getResult()
+    {
+        return result;
+    }
+}
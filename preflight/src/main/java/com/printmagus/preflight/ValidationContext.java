@@ -0,0 +1,84 @@
+package com.printmagus.preflight;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State shared by every rule during the validation of a single document.
+ *
+ * The page tree is walked only once, PDPageTree.indexOf() walks the whole tree on every call,
+ * which made documents with many pages and many violations quadratic. The walk happens when a rule
+ * first needs a page, rules which only read the trailer or the catalog never trigger it.
+ */
+public class ValidationContext
+{
+    private final PDDocument document;
+    private PDPage[] pages;
+    private Map<COSDictionary, Integer> pageIndexes;
+
+    public ValidationContext(PDDocument document)
+    {
+        this.document = document;
+    }
+
+    private synchronized PDPage[] resolvePages()
+    {
+        if (pages == null) {
+            List<PDPage> pages = new ArrayList<>(document.getNumberOfPages());
+
+            for (PDPage page: document.getPages()) {
+                pages.add(page);
+            }
+
+            this.pages = pages.toArray(new PDPage[0]);
+            this.pageIndexes = new IdentityHashMap<>(this.pages.length);
+
+            for (int i = 0; i < this.pages.length; i++) {
+                pageIndexes.put(this.pages[i].getCOSObject(), i);
+            }
+        }
+
+        return pages;
+    }
+
+    public PDDocument getDocument()
+    {
+        return document;
+    }
+
+    public List<PDPage> getPages()
+    {
+        return Collections.unmodifiableList(Arrays.asList(resolvePages()));
+    }
+
+    public PDPage getPage(int index)
+    {
+        return resolvePages()[index];
+    }
+
+    /**
+     * Read from the page tree root until the pages are resolved.
+     */
+    public synchronized int getPageCount()
+    {
+        return pages != null ? pages.length : document.getNumberOfPages();
+    }
+
+    /**
+     * Returns null if the page is not a part of the document.
+     */
+    public Integer getPageIndex(PDPage page)
+    {
+        resolvePages();
+
+        return pageIndexes.get(page.getCOSObject());
+    }
+}
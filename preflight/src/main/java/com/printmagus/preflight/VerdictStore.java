@@ -0,0 +1,20 @@
+package com.printmagus.preflight;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Keeps the violations of complete validations, so a file which was already validated with the same rules
+ * is not parsed again.
+ *
+ * The keys are hex digests of the file and of the configuration, see {@link Preflight#setVerdictStore}.
+ */
+public interface VerdictStore
+{
+    /**
+     * Returns null if there is no verdict for the key.
+     */
+    List<Violation> get(String key) throws IOException;
+
+    void put(String key, List<Violation> violations) throws IOException;
+}
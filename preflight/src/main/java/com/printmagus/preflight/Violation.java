@@ -1,11 +1,12 @@
 package com.printmagus.preflight;
 
-import org.apache.pdfbox.pdmodel.PDPage;
-
+import java.io.Serializable;
 import java.util.HashMap;
 
-public class Violation
+public class Violation implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     private String rule;
     private String message;
     private Integer page;
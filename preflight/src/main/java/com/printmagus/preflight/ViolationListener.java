@@ -0,0 +1,19 @@
+package com.printmagus.preflight;
+
+/**
+ * Receives the violations while the validation is still running.
+ *
+ * The document level violations are delivered after each rule, the page level violations after each page,
+ * in order. With a parallelism greater than one, pages are delivered as they complete, calls are never
+ * concurrent though.
+ *
+ * The validation waits until the listener returns, so a slow listener slows the validation down instead of
+ * piling up violations in memory.
+ */
+public interface ViolationListener
+{
+    /**
+     * Returning false cancels the validation, the remaining rules and pages are skipped.
+     */
+    boolean onViolation(Violation violation);
+}
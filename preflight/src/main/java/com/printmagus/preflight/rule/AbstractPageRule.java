@@ -0,0 +1,29 @@
+package com.printmagus.preflight.rule;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.util.List;
+
+/**
+ * A rule which checks every page on its own.
+ *
+ * Preflight calls validatePage() during its single walk of the page tree, doValidate() is only
+ * used when the rule is validated on its own.
+ */
+abstract public class AbstractPageRule extends AbstractRule implements PageValidator
+{
+    @Override
+    protected void doValidate(PDDocument document, List<Violation> violations)
+    {
+        for (int i = 0; i < validationContext.getPageCount(); i++) {
+            validatePage(validationContext.getPage(i), i, violations);
+        }
+    }
+
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.PAGE;
+    }
+}
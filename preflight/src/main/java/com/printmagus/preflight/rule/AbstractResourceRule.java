@@ -0,0 +1,36 @@
+package com.printmagus.preflight.rule;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.util.List;
+
+/**
+ * A rule which checks the resources of every page.
+ *
+ * Preflight resolves the resources only once per page and passes them to every resource rule,
+ * doValidate() is only used when the rule is validated on its own.
+ */
+abstract public class AbstractResourceRule extends AbstractRule implements ResourceValidator
+{
+    @Override
+    protected void doValidate(PDDocument document, List<Violation> violations)
+    {
+        for (int i = 0; i < validationContext.getPageCount(); i++) {
+            PDPage page = validationContext.getPage(i);
+            PDResources resources = page.getResources();
+
+            if (resources != null) {
+                validateResources(resources, page, i, violations);
+            }
+        }
+    }
+
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.RESOURCE;
+    }
+}
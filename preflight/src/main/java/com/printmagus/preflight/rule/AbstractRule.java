@@ -1,20 +1,29 @@
 package com.printmagus.preflight.rule;
 
+import com.printmagus.preflight.ValidationContext;
 import com.printmagus.preflight.Violation;
 import com.printmagus.preflight.util.PreflightStreamEngine;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.StringJoiner;
 
 abstract public class AbstractRule implements RuleInterface
 {
     protected PreflightStreamEngine streamEngine;
+    protected ValidationContext validationContext;
 
     public List<Violation> validate(PDDocument document)
     {
         List<Violation> violations = new ArrayList<>();
 
+        // The rule is used on its own, without Preflight
+        if (validationContext == null || validationContext.getDocument() != document) {
+            validationContext = new ValidationContext(document);
+        }
+
         this.doValidate(document, violations);
 
         return violations;
@@ -22,9 +31,37 @@ abstract public class AbstractRule implements RuleInterface
 
     protected abstract void doValidate(PDDocument document, List<Violation> violations);
 
+    /**
+     * The index of the page in the document being validated, null if it is unknown.
+     */
+    protected Integer getPageIndex(PDPage page)
+    {
+        return validationContext == null ? null : validationContext.getPageIndex(page);
+    }
+
     @Override
     public void setStreamEngine(PreflightStreamEngine engine)
     {
         streamEngine = engine;
     }
+
+    @Override
+    public void setContext(ValidationContext context)
+    {
+        this.validationContext = context;
+    }
+
+    /**
+     * The name of the rule followed by its parameters, eg. "ImageMinDpi(300)".
+     */
+    protected String fingerprint(Object... parameters)
+    {
+        StringJoiner joiner = new StringJoiner(", ", this.getClass().getSimpleName() + "(", ")");
+
+        for (Object parameter: parameters) {
+            joiner.add(String.valueOf(parameter));
+        }
+
+        return joiner.toString();
+    }
 }
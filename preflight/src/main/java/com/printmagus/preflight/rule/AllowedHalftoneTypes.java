@@ -33,4 +33,16 @@ public class AllowedHalftoneTypes extends AbstractRule
             // ignore
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 100;
+    }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(types);
+    }
 }
@@ -3,7 +3,6 @@ package com.printmagus.preflight.rule;
 import com.printmagus.preflight.Violation;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 
 import java.util.List;
@@ -16,32 +15,30 @@ import java.util.List;
  * Callas technote reference:
  * - Either TrimBox or ArtBox must be present [PDF/X-1a] [PDF/X-3]
  */
-public class BoxExists extends AbstractRule
+public class BoxExists extends AbstractPageRule
 {
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            COSArray trimBox = (COSArray) page.getCOSObject().getDictionaryObject(COSName.TRIM_BOX);
-            COSArray artBox = (COSArray) page.getCOSObject().getDictionaryObject(COSName.ART_BOX);
+        COSArray trimBox = (COSArray) page.getCOSObject().getDictionaryObject(COSName.TRIM_BOX);
+        COSArray artBox = (COSArray) page.getCOSObject().getDictionaryObject(COSName.ART_BOX);
 
-            if (trimBox == null && artBox == null) {
-                Violation violation = new Violation(
-                    this.getClass().getSimpleName(),
-                    "box_exists.trim_box_or_art_box_must_be_present",
-                    document.getPages().indexOf(page)
-                );
+        if (trimBox == null && artBox == null) {
+            Violation violation = new Violation(
+                this.getClass().getSimpleName(),
+                "box_exists.trim_box_or_art_box_must_be_present",
+                pageIndex
+            );
 
-                violations.add(violation);
-            } else if (trimBox != null && artBox != null) {
-                Violation violation = new Violation(
-                    this.getClass().getSimpleName(),
-                    "box_exists.trim_box_or_art_box_must_be_present_but_not_both",
-                    document.getPages().indexOf(page)
-                );
+            violations.add(violation);
+        } else if (trimBox != null && artBox != null) {
+            Violation violation = new Violation(
+                this.getClass().getSimpleName(),
+                "box_exists.trim_box_or_art_box_must_be_present_but_not_both",
+                pageIndex
+            );
 
-                violations.add(violation);
-            }
+            violations.add(violation);
         }
     }
 }
@@ -1,7 +1,6 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
@@ -15,41 +14,39 @@ import java.util.List;
  * Callas technote reference:
  * - Page boxes must be nested properly [PDF/X-1a] [PDF/X-3]
  */
-public class BoxNesting extends AbstractRule
+public class BoxNesting extends AbstractPageRule
 {
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            if (!boxContainsBox(page.getMediaBox(), page.getTrimBox())) {
-                Violation violation = new Violation(
-                    BoxNesting.class.getSimpleName(),
-                    "box_nesting.trim_box_must_not_extend_beyond_media_box",
-                    document.getPages().indexOf(page)
-                );
-
-                violations.add(violation);
-            }
-
-            if (!boxContainsBox(page.getBleedBox(), page.getTrimBox())) {
-                Violation violation = new Violation(
-                    BoxNesting.class.getSimpleName(),
-                    "box_nesting.trim_box_must_not_extend_beyond_bleed_box",
-                    document.getPages().indexOf(page)
-                );
-
-                violations.add(violation);
-            }
-
-            if (!boxContainsBox(page.getMediaBox(), page.getBleedBox())) {
-                Violation violation = new Violation(
-                    BoxNesting.class.getSimpleName(),
-                    "box_nesting.bleed_box_must_not_extend_beyond_media_box",
-                    document.getPages().indexOf(page)
-                );
-
-                violations.add(violation);
-            }
+        if (!boxContainsBox(page.getMediaBox(), page.getTrimBox())) {
+            Violation violation = new Violation(
+                BoxNesting.class.getSimpleName(),
+                "box_nesting.trim_box_must_not_extend_beyond_media_box",
+                pageIndex
+            );
+
+            violations.add(violation);
+        }
+
+        if (!boxContainsBox(page.getBleedBox(), page.getTrimBox())) {
+            Violation violation = new Violation(
+                BoxNesting.class.getSimpleName(),
+                "box_nesting.trim_box_must_not_extend_beyond_bleed_box",
+                pageIndex
+            );
+
+            violations.add(violation);
+        }
+
+        if (!boxContainsBox(page.getMediaBox(), page.getBleedBox())) {
+            Violation violation = new Violation(
+                BoxNesting.class.getSimpleName(),
+                "box_nesting.bleed_box_must_not_extend_beyond_media_box",
+                pageIndex
+            );
+
+            violations.add(violation);
         }
     }
 
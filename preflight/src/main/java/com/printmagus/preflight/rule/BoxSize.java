@@ -2,7 +2,6 @@ package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
@@ -15,7 +14,7 @@ import java.util.List;
  *
  * Callas technote reference: -
  */
-public class BoxSize extends AbstractRule
+public class BoxSize extends AbstractPageRule
 {
     private COSName box;
     private final float width;
@@ -39,25 +38,23 @@ public class BoxSize extends AbstractRule
     }
 
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            if (getBoxWidth(page) != round(width) || getBoxHeight(page) != round(height)) {
-                HashMap<String, Object> context = new HashMap<String, Object>();
-
-                context.put("name", box.getName());
-                context.put("width", getBoxWidth(page));
-                context.put("height", getBoxHeight(page));
-
-                Violation violation = new Violation(
-                    BoxSize.class.getSimpleName(),
-                    "box_size.must_be_exactly.%name%.%width%.%height%",
-                    document.getPages().indexOf(page),
-                    context
-                );
-
-                violations.add(violation);
-            }
+        if (getBoxWidth(page) != round(width) || getBoxHeight(page) != round(height)) {
+            HashMap<String, Object> context = new HashMap<String, Object>();
+
+            context.put("name", box.getName());
+            context.put("width", getBoxWidth(page));
+            context.put("height", getBoxHeight(page));
+
+            Violation violation = new Violation(
+                BoxSize.class.getSimpleName(),
+                "box_size.must_be_exactly.%name%.%width%.%height%",
+                pageIndex,
+                context
+            );
+
+            violations.add(violation);
         }
     }
 
@@ -104,4 +101,10 @@ public class BoxSize extends AbstractRule
 
         return null;
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(box, width, height, decimals);
+    }
 }
@@ -1,7 +1,7 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import com.printmagus.preflight.util.ColorSpaceName;
+import com.printmagus.preflight.util.ImageInfo;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -9,7 +9,6 @@ import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,7 +28,6 @@ public class ColorSpaceImages extends AbstractRule implements XObjectValidator
 {
     private List<COSName> allowedColorSpaces;
     private List<COSName> disallowedColorSpaces;
-    private PDDocument document;
 
     public ColorSpaceImages(List<COSName> allowedColorSpaces)
     {
@@ -47,42 +45,67 @@ public class ColorSpaceImages extends AbstractRule implements XObjectValidator
     @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        this.document = document;
-
         streamEngine.addValidator(this);
     }
 
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.XOBJECT;
+    }
+
+    @Override
+    public boolean isPlacementIndependent()
+    {
+        return true;
+    }
+
     @Override
     public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, PDGraphicsState graphicsState)
     {
-        List<Violation> violations = new ArrayList<>();
+        return validate(objectName, xobject, page, getPageIndex(page), graphicsState);
+    }
 
+    @Override
+    public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, Integer pageIndex, PDGraphicsState graphicsState)
+    {
         if (!(xobject instanceof PDImageXObject)) {
-            return violations;
+            return new ArrayList<>();
         }
 
         PDImageXObject image = (PDImageXObject) xobject;
 
-        try {
-            COSName colorSpace = ColorSpaceName.get(image);
+        return validateImage(objectName, image, ImageInfo.of(image), page, pageIndex, graphicsState);
+    }
+
+    @Override
+    public List<Violation> validateImage(
+        COSName objectName,
+        PDImageXObject image,
+        ImageInfo info,
+        PDPage page,
+        Integer pageIndex,
+        PDGraphicsState graphicsState
+    )
+    {
+        List<Violation> violations = new ArrayList<>();
 
-            if (colorSpace != null && !isValidColorSpace(colorSpace)) {
-                HashMap<String, Object> context = new HashMap<String, Object>();
+        COSName colorSpace = info.getColorSpace();
 
-                context.put("image", image);
-                context.put("colorSpace", colorSpace.getName());
+        if (colorSpace != null && !isValidColorSpace(colorSpace)) {
+            HashMap<String, Object> context = new HashMap<String, Object>();
 
-                Violation violation = new Violation(
-                    ColorSpaceImages.class.getSimpleName(),
-                    "color_space_images.invalid.%colorSpace%",
-                    document.getPages().indexOf(page),
-                    context
-                );
+            context.put("image", image);
+            context.put("colorSpace", colorSpace.getName());
 
-                violations.add(violation);
-            }
-        } catch (IOException e) {
-            //
+            Violation violation = new Violation(
+                ColorSpaceImages.class.getSimpleName(),
+                "color_space_images.invalid.%colorSpace%",
+                pageIndex,
+                context
+            );
+
+            violations.add(violation);
         }
 
         return violations;
@@ -102,4 +125,10 @@ public class ColorSpaceImages extends AbstractRule implements XObjectValidator
 
         return valid;
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(allowedColorSpaces, disallowedColorSpaces);
+    }
 }
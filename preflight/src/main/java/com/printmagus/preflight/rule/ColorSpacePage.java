@@ -5,8 +5,8 @@ import com.printmagus.preflight.util.ColorSpaceName;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
@@ -27,7 +27,7 @@ import java.util.List;
  * - Uses DeviceRGB [PDF/X-3]
  * - Only DeviceCMYK and spot colors allowed [PDF/X-1a]
  */
-public class ColorSpacePage extends AbstractRule
+public class ColorSpacePage extends AbstractResourceRule
 {
     private List<COSName> allowedColorSpaces;
     private List<COSName> disallowedColorSpaces;
@@ -45,40 +45,36 @@ public class ColorSpacePage extends AbstractRule
     }
 
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            COSDictionary resources = (COSDictionary) page.getCOSObject().getDictionaryObject(COSName.RESOURCES);
+        COSDictionary colorSpaces = (COSDictionary) resources.getCOSObject().getDictionaryObject(COSName.COLORSPACE);
 
-            if (resources == null || !resources.containsKey(COSName.COLORSPACE)) {
-                continue;
-            }
-
-            COSDictionary colorSpaces = (COSDictionary) resources.getDictionaryObject(COSName.COLORSPACE);
+        if (colorSpaces == null) {
+            return;
+        }
 
-            for (COSName name: page.getResources().getColorSpaceNames()) {
-                COSBase colorSpace = colorSpaces.getDictionaryObject(name);
+        for (COSName name: resources.getColorSpaceNames()) {
+            COSBase colorSpace = colorSpaces.getDictionaryObject(name);
 
-                try {
-                    COSName cs = ColorSpaceName.get(colorSpace);
+            try {
+                COSName cs = ColorSpaceName.get(colorSpace);
 
-                    if (!this.isValidColorSpace(cs)) {
-                        HashMap<String, Object> context = new HashMap<String, Object>();
+                if (!this.isValidColorSpace(cs)) {
+                    HashMap<String, Object> context = new HashMap<String, Object>();
 
-                        context.put("colorSpace", cs.getName());
+                    context.put("colorSpace", cs.getName());
 
-                        Violation violation = new Violation(
-                            ColorSpaceText.class.getSimpleName(),
-                            "color_space_page.invalid.%colorSpace%",
-                            document.getPages().indexOf(page),
-                            context
-                        );
+                    Violation violation = new Violation(
+                        ColorSpaceText.class.getSimpleName(),
+                        "color_space_page.invalid.%colorSpace%",
+                        pageIndex,
+                        context
+                    );
 
-                        violations.add(violation);
-                    }
-                } catch (IOException e) {
-                    //
+                    violations.add(violation);
                 }
+            } catch (IOException e) {
+                //
             }
         }
     }
@@ -97,4 +93,10 @@ public class ColorSpacePage extends AbstractRule
 
         return valid;
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(allowedColorSpaces, disallowedColorSpaces);
+    }
 }
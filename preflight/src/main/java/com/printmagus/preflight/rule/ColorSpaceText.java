@@ -1,11 +1,6 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import org.apache.pdfbox.contentstream.PDFStreamEngine;
-import org.apache.pdfbox.contentstream.operator.DrawObject;
-import org.apache.pdfbox.contentstream.operator.color.*;
-import org.apache.pdfbox.contentstream.operator.state.*;
-import org.apache.pdfbox.contentstream.operator.text.*;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -16,8 +11,6 @@ import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 import org.apache.pdfbox.util.Matrix;
 import org.apache.pdfbox.util.Vector;
 
-import java.awt.color.ColorSpace;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -33,7 +26,7 @@ import java.util.List;
  * - Uses DeviceRGB [PDF/X-3]
  * - Only DeviceCMYK and spot colors allowed [PDF/X-1a]
  */
-public class ColorSpaceText extends AbstractRule
+public class ColorSpaceText extends AbstractRule implements ContentStreamValidator
 {
     private List<COSName> allowedColorSpaces;
     private List<COSName> disallowedColorSpaces;
@@ -50,88 +43,54 @@ public class ColorSpaceText extends AbstractRule
         this.disallowedColorSpaces = disallowedColorSpaces;
     }
 
+    @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        try {
-            TextColors s = new TextColors(document, violations);
+        streamEngine.addValidator(this);
+    }
 
-            for (PDPage page : document.getPages()) {
-                s.processPage(page);
-            }
-        } catch (IOException e) {
-            violations.add(
-                new Violation(
-                    this.getClass().getSimpleName(),
-                    "color_space_text.exception",
-                    null
-                )
-            );
-        }
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.OPERATOR;
+    }
+
+    @Override
+    public Violation createExceptionViolation(Integer pageIndex)
+    {
+        return new Violation(ColorSpaceText.class.getSimpleName(), "color_space_text.exception", pageIndex);
     }
 
-    class TextColors extends PDFStreamEngine
+    @Override
+    public ContentStreamHandler createHandler(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        PDDocument document;
+        return new TextColors(pageIndex, violations);
+    }
+
+    class TextColors implements ContentStreamHandler
+    {
+        Integer pageIndex;
         List<Violation> violations;
         PDColorSpace currentStrokingColorSpace;
         PDColorSpace currentNonStrokingColorSpace;
         StringBuilder currentText = new StringBuilder();
 
-        TextColors(PDDocument document, List<Violation> violations) throws IOException
+        TextColors(Integer pageIndex, List<Violation> violations)
         {
-            this.document = document;
+            this.pageIndex = pageIndex;
             this.violations = violations;
-
-            addOperator(new BeginText());
-            addOperator(new Concatenate());
-            addOperator(new DrawObject()); // special text version
-            addOperator(new EndText());
-            addOperator(new SetGraphicsStateParameters());
-            addOperator(new Save());
-            addOperator(new Restore());
-            addOperator(new NextLine());
-            addOperator(new SetCharSpacing());
-            addOperator(new MoveText());
-            addOperator(new MoveTextSetLeading());
-            addOperator(new SetFontAndSize());
-            addOperator(new ShowText());
-            addOperator(new ShowTextAdjusted());
-            addOperator(new SetTextLeading());
-            addOperator(new SetMatrix());
-            addOperator(new SetTextRenderingMode());
-            addOperator(new SetTextRise());
-            addOperator(new SetWordSpacing());
-            addOperator(new SetTextHorizontalScaling());
-            addOperator(new ShowTextLine());
-            addOperator(new ShowTextLineAndSpace());
-
-            addOperator(new SetStrokingColorSpace());
-            addOperator(new SetNonStrokingColorSpace());
-            addOperator(new SetStrokingDeviceCMYKColor());
-            addOperator(new SetNonStrokingDeviceCMYKColor());
-            addOperator(new SetNonStrokingDeviceRGBColor());
-            addOperator(new SetStrokingDeviceRGBColor());
-            addOperator(new SetNonStrokingDeviceGrayColor());
-            addOperator(new SetStrokingDeviceGrayColor());
-            addOperator(new SetStrokingColor());
-            addOperator(new SetStrokingColorN());
-            addOperator(new SetNonStrokingColor());
-            addOperator(new SetNonStrokingColorN());
         }
 
         @Override
-        protected void showGlyph(
+        public void showGlyph(
             Matrix textRenderingMatrix,
             PDFont font,
             int code,
             String unicode,
-            Vector displacement
-        ) throws IOException
+            Vector displacement,
+            PDGraphicsState state
+        )
         {
-            super.showGlyph(textRenderingMatrix, font, code, unicode, displacement);
-
-            PDGraphicsState state = getGraphicsState();
-
             if (currentStrokingColorSpace == null) {
                 currentStrokingColorSpace = state.getStrokingColorSpace();
                 currentNonStrokingColorSpace = state.getNonStrokingColorSpace();
@@ -150,6 +109,14 @@ public class ColorSpaceText extends AbstractRule
             currentText.append(unicode);
         }
 
+        @Override
+        public void endPage()
+        {
+            if (currentText.length() > 0) {
+                processColorSpaceText();
+            }
+        }
+
         private void processColorSpaceText()
         {
             Boolean valid = true;
@@ -174,7 +141,7 @@ public class ColorSpaceText extends AbstractRule
                 Violation violation = new Violation(
                     ColorSpaceText.class.getSimpleName(),
                     "color_space_text.invalid.%colorSpace%",
-                    document.getPages().indexOf(getCurrentPage()),
+                    pageIndex,
                     context
                 );
 
@@ -203,4 +170,16 @@ public class ColorSpaceText extends AbstractRule
             return valid;
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 100;
+    }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(allowedColorSpaces, disallowedColorSpaces);
+    }
 }
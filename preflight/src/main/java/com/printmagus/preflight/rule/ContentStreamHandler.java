@@ -0,0 +1,51 @@
+package com.printmagus.preflight.rule;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the events of a single page's content stream (including the forms drawn on it).
+ *
+ * Every method is called after the stream engine has processed the event, so the graphics
+ * state passed in is already up to date.
+ */
+public interface ContentStreamHandler
+{
+    default void processOperator(Operator operator, List<COSBase> operands, PDGraphicsState graphicsState)
+        throws IOException
+    {
+    }
+
+    default void showGlyph(
+        Matrix textRenderingMatrix,
+        PDFont font,
+        int code,
+        String unicode,
+        Vector displacement,
+        PDGraphicsState graphicsState
+    ) throws IOException
+    {
+    }
+
+    default void colorChanged(PDGraphicsState graphicsState) throws IOException
+    {
+    }
+
+    default void showXObject(COSName objectName, PDXObject xobject, PDGraphicsState graphicsState)
+        throws IOException
+    {
+    }
+
+    default void endPage() throws IOException
+    {
+    }
+}
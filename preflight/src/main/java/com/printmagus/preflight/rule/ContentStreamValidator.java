@@ -0,0 +1,26 @@
+package com.printmagus.preflight.rule;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.util.List;
+
+/**
+ * A rule that inspects the content stream of the pages.
+ *
+ * The content stream of every page is parsed only once by the PreflightStreamEngine, the events
+ * are fanned out to the handlers created here. A new handler is created for every page, so
+ * the handler can keep its state without worrying about other pages.
+ */
+public interface ContentStreamValidator
+{
+    ContentStreamHandler createHandler(PDPage page, Integer pageIndex, List<Violation> violations);
+
+    /**
+     * The violation reported when the content stream of the page could not be processed, null for none.
+     */
+    default Violation createExceptionViolation(Integer pageIndex)
+    {
+        return null;
+    }
+}
@@ -32,4 +32,10 @@ public class DocumentIdExists extends AbstractRule
             violations.add(violation);
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 1;
+    }
 }
@@ -33,4 +33,10 @@ public class DocumentVersion extends AbstractRule
             violations.add(violation);
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 1;
+    }
 }
@@ -1,6 +1,7 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.util.ImageInfo;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -24,7 +25,6 @@ import java.util.List;
 public class ImageMinDpi extends AbstractRule implements XObjectValidator
 {
     private Integer min;
-    private PDDocument document;
 
     public ImageMinDpi(Integer min)
     {
@@ -34,26 +34,49 @@ public class ImageMinDpi extends AbstractRule implements XObjectValidator
     @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        this.document = document;
-
         streamEngine.addValidator(this);
     }
 
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.XOBJECT;
+    }
+
     @Override
     public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, PDGraphicsState graphicsState)
     {
-        List<Violation> violations = new ArrayList<>();
+        return validate(objectName, xobject, page, getPageIndex(page), graphicsState);
+    }
 
+    @Override
+    public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, Integer pageIndex, PDGraphicsState graphicsState)
+    {
         if (!(xobject instanceof PDImageXObject)) {
-            return violations;
+            return new ArrayList<>();
         }
 
         PDImageXObject image = (PDImageXObject) xobject;
 
+        return validateImage(objectName, image, ImageInfo.of(image), page, pageIndex, graphicsState);
+    }
+
+    @Override
+    public List<Violation> validateImage(
+        COSName objectName,
+        PDImageXObject image,
+        ImageInfo info,
+        PDPage page,
+        Integer pageIndex,
+        PDGraphicsState graphicsState
+    )
+    {
+        List<Violation> violations = new ArrayList<>();
+
         Matrix ctm = graphicsState.getCurrentTransformationMatrix();
 
-        Integer DpiX = (int) Math.ceil(Math.abs(image.getWidth() * 72 / ctm.getScaleX()));
-        Integer DpiY = (int) Math.ceil(Math.abs(image.getHeight() * 72 / ctm.getScaleY()));
+        Integer DpiX = (int) Math.ceil(Math.abs(info.getWidth() * 72 / ctm.getScaleX()));
+        Integer DpiY = (int) Math.ceil(Math.abs(info.getHeight() * 72 / ctm.getScaleY()));
 
         if (DpiX < min || DpiY < min) {
             HashMap<String, Object> context = new HashMap<String, Object>();
@@ -65,7 +88,7 @@ public class ImageMinDpi extends AbstractRule implements XObjectValidator
             Violation violation = new Violation(
                 ImageMinDpi.class.getSimpleName(),
                 "image_min_dpi.too_low.%dpiX%.%dpiY%",
-                document.getPages().indexOf(page),
+                pageIndex,
                 context
             );
 
@@ -74,4 +97,10 @@ public class ImageMinDpi extends AbstractRule implements XObjectValidator
 
         return violations;
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(min);
+    }
 }
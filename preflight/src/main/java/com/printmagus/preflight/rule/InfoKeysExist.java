@@ -46,4 +46,10 @@ public class InfoKeysExist extends AbstractRule
             }
         }
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(keys);
+    }
 }
@@ -9,6 +9,7 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
@@ -76,4 +77,17 @@ public class InfoKeysMatch extends AbstractRule
             }
         }
     }
+
+    @Override
+    public String getFingerprint()
+    {
+        // Sorted, the iteration order of a HashMap is not a part of the configuration
+        TreeMap<String, String> patterns = new TreeMap<>();
+
+        for (String key: keys.keySet()) {
+            patterns.put(key, keys.get(key).pattern() + "/" + keys.get(key).flags());
+        }
+
+        return fingerprint(patterns);
+    }
 }
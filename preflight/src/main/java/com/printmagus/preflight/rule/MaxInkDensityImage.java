@@ -1,19 +1,26 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import com.printmagus.preflight.util.ColorSpaceName;
-import com.printmagus.preflight.util.SampledRasterReader;
+import com.printmagus.preflight.util.BandedRasterReader;
+import com.printmagus.preflight.util.ImageAnalysis;
+import com.printmagus.preflight.util.ImageAnalysisCache;
+import com.printmagus.preflight.util.ImageInfo;
+import com.printmagus.preflight.util.InkDensityReducer;
+import com.printmagus.preflight.util.MergeableRowReducer;
+import com.printmagus.preflight.util.RowRangeReducer;
+import com.printmagus.preflight.util.StridedReducer;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
-import java.awt.image.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Not a part of any standard, but very important for QA.
@@ -25,75 +32,117 @@ import java.util.List;
  * A pixel by pixel check is the only way to to this as far as I know.
  * GhostScript implements it the same way.
  *
+ * Images larger than the max area (or the max image area of the stream engine) are skipped, unless a pixel
+ * budget is set: then they are sampled, every k-th pixel of every k-th row, with k picked so that the samples
+ * fit the budget. The rows which are not sampled are decoded, but not unpacked. If a sample exceeds the limit,
+ * the rows it stands for are checked exactly, the violation reports the density found there and the
+ * sampling factor k. Exceeding pixels between the samples can be missed.
+ *
  * Callas technote reference: -
  */
 public class MaxInkDensityImage extends AbstractRule implements XObjectValidator
 {
-    HashMap<COSName, Float> cache;
     private Integer maxDensity;
     private Integer maxArea;
-    private PDDocument document;
+    private Long pixelBudget;
 
     public MaxInkDensityImage(Integer maxDensity)
     {
         this.maxDensity = maxDensity;
         this.maxArea = Integer.MAX_VALUE;
-        this.cache = new HashMap<COSName, Float>();
     }
 
     public MaxInkDensityImage(Integer maxDensity, Integer maxArea)
     {
         this.maxDensity = maxDensity;
         this.maxArea = maxArea;
-        this.cache = new HashMap<COSName, Float>();
+    }
+
+    public MaxInkDensityImage(Integer maxDensity, Integer maxArea, Long pixelBudget)
+    {
+        this.maxDensity = maxDensity;
+        this.maxArea = maxArea;
+        this.pixelBudget = pixelBudget;
     }
 
     @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        this.document = document;
-
         streamEngine.addValidator(this);
     }
 
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.XOBJECT;
+    }
+
+    @Override
+    public boolean isHeavy()
+    {
+        return true;
+    }
+
+    /**
+     * The stream engine analyses every image only once per document.
+     */
+    @Override
+    public boolean isPlacementIndependent()
+    {
+        return true;
+    }
+
     @Override
     public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, PDGraphicsState graphicsState)
     {
-        List<Violation> violations = new ArrayList<>();
+        return validate(objectName, xobject, page, getPageIndex(page), graphicsState);
+    }
 
+    @Override
+    public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, Integer pageIndex, PDGraphicsState graphicsState)
+    {
         if (!(xobject instanceof PDImageXObject)) {
-            return violations;
+            return new ArrayList<>();
         }
 
         PDImageXObject image = (PDImageXObject) xobject;
 
-        if (image.getWidth() * image.getHeight() > maxArea) {
+        return validateImage(objectName, image, ImageInfo.of(image), page, pageIndex, graphicsState);
+    }
+
+    @Override
+    public List<Violation> validateImage(
+        COSName objectName,
+        PDImageXObject image,
+        ImageInfo info,
+        PDPage page,
+        Integer pageIndex,
+        PDGraphicsState graphicsState
+    )
+    {
+        List<Violation> violations = new ArrayList<>();
+        int stride = getStride(info);
+
+        if (stride == 0) {
             return violations;
         }
 
         try {
             Float max = 0f;
 
-            if (cache.containsKey(objectName)) {
-                max = cache.get(objectName);
-            } else if (ColorSpaceName.get(image) == COSName.DEVICECMYK) {
-                Raster r = SampledRasterReader.getRaster(image, image.getColorKeyMask());
-
-                float[] pixels = r.getPixels(0,0, r.getWidth(), r.getHeight(), (float[])null);
+            if (info.getColorSpace() == COSName.DEVICECMYK) {
+                byte[] key = getCacheKey(image);
 
-                for (int i = 0; i < pixels.length; i += 4) {
-                    Float density = pixels[i] + pixels[i + 1] + pixels[i + 2] + pixels[i + 3];
+                max = getCachedDensity(key);
 
-                    if (density > max) {
-                        max = density;
-                    }
+                if (max == null && stride > 1) {
+                    max = getSampledDensity(image, info, stride);
+                } else {
+                    stride = 1;
+                    max = max == null ? getMaxDensity(image, info, key) : max;
                 }
-
-                max = max / 255 * 100;
             }
 
-            cache.put(objectName, max);
-
             if (max > maxDensity) {
                 HashMap<String, Object> context = new HashMap<String, Object>();
 
@@ -101,19 +150,141 @@ public class MaxInkDensityImage extends AbstractRule implements XObjectValidator
                 context.put("image", image);
                 context.put("limit", maxDensity);
 
+                if (stride > 1) {
+                    context.put("sampling", stride);
+                }
+
                 Violation violation = new Violation(
                     MaxInkDensityImage.class.getSimpleName(),
                     "max_ink_density_image.exceeds.%limit%.%density%",
-                    document.getPages().indexOf(page),
+                    pageIndex,
                     context
                 );
 
                 violations.add(violation);
             }
         } catch (IOException e) {
-            //
+            // A deadline ends the analysis, a decode error is reported as a failure of the rule on the page
+            throw new UncheckedIOException(e);
         }
 
         return violations;
     }
+
+    /**
+     * Images above the max image area of the stream engine are only handed to this rule with a pixel budget.
+     */
+    @Override
+    public boolean isImageCostBounded()
+    {
+        return pixelBudget != null;
+    }
+
+    /**
+     * 1 for an exact analysis, 0 if the image is skipped. The max image area of the stream engine is a limit too.
+     */
+    @SuppressWarnings("deprecation")
+    private int getStride(ImageInfo info)
+    {
+        long limit = streamEngine == null ? maxArea : Math.min(maxArea, streamEngine.getMaxImageArea());
+
+        if (info.getArea() <= limit) {
+            return 1;
+        }
+
+        return pixelBudget == null ? 0 : StridedReducer.getStride(info.getArea(), pixelBudget);
+    }
+
+    /**
+     * The key of the image in the image analysis cache, null if there is no cache.
+     */
+    private byte[] getCacheKey(PDImageXObject image) throws IOException
+    {
+        return getImageAnalysisCache() == null ? null : ImageAnalysisCache.digest(image);
+    }
+
+    /**
+     * The exact result from the image analysis cache, null if there is none.
+     */
+    private Float getCachedDensity(byte[] key)
+    {
+        if (key == null) {
+            return null;
+        }
+
+        ImageAnalysis analysis = getImageAnalysisCache().get(key);
+
+        return analysis == null ? null : analysis.getMaxInkDensity();
+    }
+
+    /**
+     * Decodes the image, the result is put in the image analysis cache.
+     */
+    private Float getMaxDensity(PDImageXObject image, ImageInfo info, byte[] key) throws IOException
+    {
+        InkDensityReducer reducer = new InkDensityReducer(false);
+
+        read(image, reducer);
+
+        Float max = reducer.getMaxDensity();
+
+        if (key != null) {
+            getImageAnalysisCache().put(
+                key,
+                new ImageAnalysis(info.getWidth(), info.getHeight(), info.getColorSpace().getName(), max)
+            );
+        }
+
+        return max;
+    }
+
+    private ImageAnalysisCache getImageAnalysisCache()
+    {
+        return streamEngine == null ? null : streamEngine.getImageAnalysisCache();
+    }
+
+    /**
+     * Analyses every k-th pixel of every k-th row, then the k rows of the maximum exactly if it exceeds the limit.
+     *
+     * The result is not exact, so it is not cached.
+     */
+    private Float getSampledDensity(PDImageXObject image, ImageInfo info, int stride) throws IOException
+    {
+        InkDensityReducer sampled = new InkDensityReducer(false);
+
+        read(image, new StridedReducer(sampled, stride));
+
+        if (sampled.getMaxDensity() <= maxDensity || sampled.getMaxRow() < 0) {
+            return sampled.getMaxDensity();
+        }
+
+        // The rows the sample stands for, they contain it so the result is not lower
+        InkDensityReducer exact = new InkDensityReducer(false);
+        int from = sampled.getMaxRow() * stride;
+
+        read(image, new RowRangeReducer(exact, from, Math.min(info.getHeight(), from + stride)));
+
+        return exact.getMaxDensity();
+    }
+
+    /**
+     * Row by row, memory use does not grow with the size of the image. Very large images are decoded on another
+     * thread and analysed in bands on the common pool.
+     */
+    private static void read(PDImageXObject image, MergeableRowReducer reducer) throws IOException
+    {
+        BandedRasterReader.read(image, image.getColorKeyMask(), reducer, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public int getCost()
+    {
+        return 1000;
+    }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(maxDensity, maxArea, pixelBudget);
+    }
 }
@@ -1,12 +1,7 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import org.apache.pdfbox.contentstream.PDFStreamEngine;
-import org.apache.pdfbox.contentstream.operator.DrawObject;
 import org.apache.pdfbox.contentstream.operator.Operator;
-import org.apache.pdfbox.contentstream.operator.color.*;
-import org.apache.pdfbox.contentstream.operator.state.*;
-import org.apache.pdfbox.contentstream.operator.text.*;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -28,7 +23,7 @@ import java.util.List;
  *
  * Callas technote reference: -
  */
-public class MaxInkDensityText extends AbstractRule
+public class MaxInkDensityText extends AbstractRule implements ContentStreamValidator
 {
     private Integer maxDensity;
 
@@ -37,88 +32,54 @@ public class MaxInkDensityText extends AbstractRule
         this.maxDensity = maxDensity;
     }
 
+    @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        try {
-            InkDensity s = new InkDensity(document, violations);
+        streamEngine.addValidator(this);
+    }
 
-            for (PDPage page : document.getPages()) {
-                s.processPage(page);
-            }
-        } catch (IOException e) {
-            violations.add(
-                new Violation(
-                    this.getClass().getSimpleName(),
-                    "max_ink_density_text.exception",
-                    null
-                )
-            );
-        }
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.OPERATOR;
+    }
+
+    @Override
+    public Violation createExceptionViolation(Integer pageIndex)
+    {
+        return new Violation(MaxInkDensityText.class.getSimpleName(), "max_ink_density_text.exception", pageIndex);
     }
 
-    class InkDensity extends PDFStreamEngine
+    @Override
+    public ContentStreamHandler createHandler(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        PDDocument document;
+        return new InkDensity(pageIndex, violations);
+    }
+
+    class InkDensity implements ContentStreamHandler
+    {
+        Integer pageIndex;
         List<Violation> violations;
         PDColor currentStrokingColor;
         PDColor currentNonStrokingColor;
         StringBuilder currentText = new StringBuilder();
 
-        InkDensity(PDDocument document, List<Violation> violations) throws IOException
+        InkDensity(Integer pageIndex, List<Violation> violations)
         {
-            this.document = document;
+            this.pageIndex = pageIndex;
             this.violations = violations;
-
-            addOperator(new BeginText());
-            addOperator(new Concatenate());
-            addOperator(new DrawObject()); // special text version
-            addOperator(new EndText());
-            addOperator(new SetGraphicsStateParameters());
-            addOperator(new Save());
-            addOperator(new Restore());
-            addOperator(new NextLine());
-            addOperator(new SetCharSpacing());
-            addOperator(new MoveText());
-            addOperator(new MoveTextSetLeading());
-            addOperator(new SetFontAndSize());
-            addOperator(new ShowText());
-            addOperator(new ShowTextAdjusted());
-            addOperator(new SetTextLeading());
-            addOperator(new SetMatrix());
-            addOperator(new SetTextRenderingMode());
-            addOperator(new SetTextRise());
-            addOperator(new SetWordSpacing());
-            addOperator(new SetTextHorizontalScaling());
-            addOperator(new ShowTextLine());
-            addOperator(new ShowTextLineAndSpace());
-
-            addOperator(new SetStrokingColorSpace());
-            addOperator(new SetNonStrokingColorSpace());
-            addOperator(new SetStrokingDeviceCMYKColor());
-            addOperator(new SetNonStrokingDeviceCMYKColor());
-            addOperator(new SetNonStrokingDeviceRGBColor());
-            addOperator(new SetStrokingDeviceRGBColor());
-            addOperator(new SetNonStrokingDeviceGrayColor());
-            addOperator(new SetStrokingDeviceGrayColor());
-            addOperator(new SetStrokingColor());
-            addOperator(new SetStrokingColorN());
-            addOperator(new SetNonStrokingColor());
-            addOperator(new SetNonStrokingColorN());
         }
 
         @Override
-        protected void showGlyph(
+        public void showGlyph(
             Matrix textRenderingMatrix,
             PDFont font,
             int code,
             String unicode,
-            Vector displacement
+            Vector displacement,
+            PDGraphicsState state
         ) throws IOException
         {
-            super.showGlyph(textRenderingMatrix, font, code, unicode, displacement);
-
-            PDGraphicsState state = getGraphicsState();
-
             if (currentStrokingColor == null) {
                 currentStrokingColor = state.getStrokingColor();
                 currentNonStrokingColor = state.getNonStrokingColor();
@@ -139,15 +100,22 @@ public class MaxInkDensityText extends AbstractRule
         }
 
         @Override
-        protected void processOperator(Operator operator, List<COSBase> operands) throws IOException
+        public void processOperator(Operator operator, List<COSBase> operands, PDGraphicsState state)
         {
-            super.processOperator(operator, operands);
-
             if (operator.getName().equals("Td")) { // move text position
                 currentText.append(System.getProperty("line.separator")); // just add a new line, this is plaintext after all
             }
         }
 
+        @Override
+        public void endPage() throws IOException
+        {
+            if (currentText.length() > 0) {
+                processColor(currentStrokingColor);
+                processColor(currentNonStrokingColor);
+            }
+        }
+
         private void processColor(PDColor color) throws IOException
         {
             Float density = 0f;
@@ -177,7 +145,7 @@ public class MaxInkDensityText extends AbstractRule
                 Violation violation = new Violation(
                     MaxInkDensityText.class.getSimpleName(),
                     "max_ink_density_text.exceeds.%limit%.%density%",
-                    document.getPages().indexOf(getCurrentPage()),
+                    pageIndex,
                     context
                 );
 
@@ -185,4 +153,16 @@ public class MaxInkDensityText extends AbstractRule
             }
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 100;
+    }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(maxDensity);
+    }
 }
@@ -1,6 +1,7 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.util.Deadline;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
@@ -43,15 +44,13 @@ public class NoActions extends AbstractRule
         "GoTo3DView"
     );
 
-    PDDocument document;
     List<Violation> violations;
 
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        this.document = document;
         this.violations = violations;
 
-        for (PDPage page: document.getPages()) {
+        for (PDPage page: validationContext.getPages()) {
             try {
                 for (PDAnnotation annotation: page.getAnnotations()) {
                     if (annotation instanceof PDAnnotationLink) {
@@ -65,7 +64,13 @@ public class NoActions extends AbstractRule
             }
         }
 
+        Deadline deadline = Deadline.current();
+
         for (COSObject cos: document.getDocument().getObjects()) {
+            if (deadline.isExpired()) {
+                break;
+            }
+
             if (cos.getObject() instanceof COSDictionary) {
                 COSDictionary dictionary = (COSDictionary) cos.getObject();
 
@@ -75,7 +80,6 @@ public class NoActions extends AbstractRule
             }
         }
 
-        this.document = null;
         this.violations = null;
     }
 
@@ -101,10 +105,16 @@ public class NoActions extends AbstractRule
         Violation violation = new Violation(
             this.getClass().getSimpleName(),
             "no_actions.no_actions_or_javascript_allowed",
-            page != null ? document.getPages().indexOf(page) : null,
+            page != null ? validationContext.getPageIndex(page) : null,
             context
         );
 
         violations.add(violation);
     }
+
+    @Override
+    public int getCost()
+    {
+        return 100;
+    }
 }
@@ -1,7 +1,6 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
@@ -17,37 +16,35 @@ import java.util.List;
  * Callas technote reference:
  * - Annotation and Acrobat form elements must be outside of TrimBox and BleedBox [PDF/X-1a] [PDF/X-3]
  */
-public class NoAnnotationsInsidePageArea extends AbstractRule
+public class NoAnnotationsInsidePageArea extends AbstractPageRule
 {
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            try {
-                for (PDAnnotation annotation : page.getAnnotations()) {
-                    if (boxesOverlap(page.getTrimBox(), annotation.getRectangle())
-                        || boxesOverlap(page.getBleedBox(), annotation.getRectangle())
-                    ) {
-                        HashMap<String, Object> context = new HashMap<String, Object>();
+        try {
+            for (PDAnnotation annotation : page.getAnnotations()) {
+                if (boxesOverlap(page.getTrimBox(), annotation.getRectangle())
+                    || boxesOverlap(page.getBleedBox(), annotation.getRectangle())
+                ) {
+                    HashMap<String, Object> context = new HashMap<String, Object>();
 
-                        context.put("annotation", annotation);
-                        context.put("rectangle", annotation.getRectangle());
-                        context.put("bleedBox", page.getBleedBox());
-                        context.put("trimBox", page.getTrimBox());
+                    context.put("annotation", annotation);
+                    context.put("rectangle", annotation.getRectangle());
+                    context.put("bleedBox", page.getBleedBox());
+                    context.put("trimBox", page.getTrimBox());
 
-                        Violation violation = new Violation(
-                            this.getClass().getSimpleName(),
-                            "no_annotations_inside_page_area.annotations_must_be_outside_of_trim_box_and_bleed_box",
-                            document.getPages().indexOf(page),
-                            context
-                        );
+                    Violation violation = new Violation(
+                        this.getClass().getSimpleName(),
+                        "no_annotations_inside_page_area.annotations_must_be_outside_of_trim_box_and_bleed_box",
+                        pageIndex,
+                        context
+                    );
 
-                        violations.add(violation);
-                    }
+                    violations.add(violation);
                 }
-            } catch (IOException e) {
-                // ignore
             }
+        } catch (IOException e) {
+            // ignore
         }
     }
 
@@ -28,4 +28,10 @@ public class NoEncryption extends AbstractRule
             violations.add(violation);
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 1;
+    }
 }
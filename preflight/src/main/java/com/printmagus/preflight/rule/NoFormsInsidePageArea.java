@@ -7,7 +7,6 @@ import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 
 import java.io.IOException;
@@ -24,22 +23,31 @@ import java.util.List;
  */
 public class NoFormsInsidePageArea extends AbstractRule implements XObjectValidator
 {
-    private PDDocument document;
 
     @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
-        this.document = document;
-
         streamEngine.addValidator(this);
     }
 
+    @Override
+    public RuleScope getScope()
+    {
+        return RuleScope.XOBJECT;
+    }
+
     @Override
     public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, PDGraphicsState graphicsState)
+    {
+        return validate(objectName, xobject, page, getPageIndex(page), graphicsState);
+    }
+
+    @Override
+    public List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, Integer pageIndex, PDGraphicsState graphicsState)
     {
         List<Violation> violations = new ArrayList<>();
 
-        if (!(xobject instanceof PDImageXObject)) {
+        if (!(xobject instanceof PDFormXObject)) {
             return violations;
         }
 
@@ -58,7 +66,7 @@ public class NoFormsInsidePageArea extends AbstractRule implements XObjectValida
             Violation violation = new Violation(
                 this.getClass().getSimpleName(),
                 "no_forms_inside_page_area.forms_must_be_outside_of_trim_box_and_bleed_box",
-                document.getPages().indexOf(page),
+                pageIndex,
                 context
             );
 
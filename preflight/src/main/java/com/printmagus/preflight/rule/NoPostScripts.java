@@ -2,8 +2,8 @@ package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.PDPostScriptXObject;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 
@@ -17,32 +17,31 @@ import java.util.List;
  * Callas technote reference:
  * - Embedded PostScript prohibited [PDF/X-1a] [PDF/X-3]
  */
-public class NoPostScripts extends AbstractRule
+public class NoPostScripts extends AbstractResourceRule
 {
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    @Override
+    public void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            for (COSName name: page.getResources().getXObjectNames()) {
-                try {
-                    PDXObject xobject = page.getResources().getXObject(name);
+        for (COSName name: resources.getXObjectNames()) {
+            try {
+                PDXObject xobject = resources.getXObject(name);
 
-                    if (xobject instanceof PDPostScriptXObject) {
-                        HashMap<String, Object> context = new HashMap<String, Object>();
+                if (xobject instanceof PDPostScriptXObject) {
+                    HashMap<String, Object> context = new HashMap<String, Object>();
 
-                        context.put("script", xobject);
+                    context.put("script", xobject);
 
-                        Violation violation = new Violation(
-                            this.getClass().getSimpleName(),
-                            "no_postscripts.embedded_postscript_not_allowed",
-                            document.getPages().indexOf(page),
-                            context
-                        );
+                    Violation violation = new Violation(
+                        this.getClass().getSimpleName(),
+                        "no_postscripts.embedded_postscript_not_allowed",
+                        pageIndex,
+                        context
+                    );
 
-                        violations.add(violation);
-                    }
-                } catch (IOException e){
-                    // ignore
+                    violations.add(violation);
                 }
+            } catch (IOException e){
+                // ignore
             }
         }
     }
@@ -1,7 +1,6 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 
 import java.util.List;
@@ -13,21 +12,19 @@ import java.util.List;
  * Callas technote reference:
  * - Page must not be separated [PDF/X-1a] [PDF/X-3]
  */
-public class NoSeparation extends AbstractRule
+public class NoSeparation extends AbstractPageRule
 {
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            if (page.getCOSObject().containsKey("SeparationInfo")) {
-                Violation violation = new Violation(
-                    this.getClass().getSimpleName(),
-                    "no_separation.page_must_not_be_separated",
-                    document.getPages().indexOf(page)
-                );
+        if (page.getCOSObject().containsKey("SeparationInfo")) {
+            Violation violation = new Violation(
+                this.getClass().getSimpleName(),
+                "no_separation.page_must_not_be_separated",
+                pageIndex
+            );
 
-                violations.add(violation);
-            }
+            violations.add(violation);
         }
     }
 }
@@ -2,8 +2,8 @@ package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
 
 import java.util.List;
@@ -14,23 +14,22 @@ import java.util.List;
  * Callas technote reference:
  * - Transfer curves prohibited [PDF/X-1a] [PDF/X-3]
  */
-public class NoTransferCurves extends AbstractRule
+public class NoTransferCurves extends AbstractResourceRule
 {
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    @Override
+    public void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page : document.getPages()) {
-            for (COSName gsName : page.getResources().getExtGStateNames()) {
-                PDExtendedGraphicsState extendedGraphicsState = page.getResources().getExtGState(gsName);
+        for (COSName gsName : resources.getExtGStateNames()) {
+            PDExtendedGraphicsState extendedGraphicsState = resources.getExtGState(gsName);
 
-                if (extendedGraphicsState.getTransfer() != null || extendedGraphicsState.getTransfer2() != null) {
-                    Violation violation = new Violation(
-                        this.getClass().getSimpleName(),
-                        "no_transfer_curves.transfer_curves_not_allowed",
-                        null
-                    );
+            if (extendedGraphicsState.getTransfer() != null || extendedGraphicsState.getTransfer2() != null) {
+                Violation violation = new Violation(
+                    this.getClass().getSimpleName(),
+                    "no_transfer_curves.transfer_curves_not_allowed",
+                    null
+                );
 
-                    violations.add(violation);
-                }
+                violations.add(violation);
             }
         }
     }
@@ -1,6 +1,7 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.util.Deadline;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
@@ -26,7 +27,13 @@ public class NoTransparency extends AbstractRule
     @Override
     protected void doValidate(PDDocument document, List<Violation> violations)
     {
+        Deadline deadline = Deadline.current();
+
         for (COSObject cos: document.getDocument().getObjects()) {
+            if (deadline.isExpired()) {
+                break;
+            }
+
             if (cos.getObject() instanceof COSDictionary) {
                 COSDictionary dictionary = (COSDictionary) cos.getObject();
 
@@ -61,4 +68,10 @@ public class NoTransparency extends AbstractRule
             }
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 100;
+    }
 }
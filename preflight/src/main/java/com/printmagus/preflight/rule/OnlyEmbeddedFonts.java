@@ -2,8 +2,8 @@ package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 
 import java.io.IOException;
@@ -16,31 +16,29 @@ import java.util.List;
  * Callas technote reference:
  * - Fonts must be embedded [PDF/X-1a] [PDF/X-3]
  */
-public class OnlyEmbeddedFonts extends AbstractRule
+public class OnlyEmbeddedFonts extends AbstractResourceRule
 {
     @Override
-    protected void doValidate(PDDocument document, List<Violation> violations)
+    public void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations)
     {
-        for (PDPage page: document.getPages()) {
-            for (COSName fontName : page.getResources().getFontNames()) {
-                try {
-                    PDFont font = page.getResources().getFont(fontName);
+        for (COSName fontName : resources.getFontNames()) {
+            try {
+                PDFont font = resources.getFont(fontName);
 
-                    if (!font.isEmbedded()) {
-                        HashMap<String, Object> context = new HashMap<String, Object>();
+                if (!font.isEmbedded()) {
+                    HashMap<String, Object> context = new HashMap<String, Object>();
 
-                        context.put("font", font);
+                    context.put("font", font);
 
-                        Violation violation = new Violation(
-                            this.getClass().getSimpleName(),
-                            "only_embedded_fonts.fonts_must_be_embedded",
-                            document.getPages().indexOf(page),
-                            context
-                        );
-                    }
-                } catch (IOException e) {
-                    // just ignore it
+                    Violation violation = new Violation(
+                        this.getClass().getSimpleName(),
+                        "only_embedded_fonts.fonts_must_be_embedded",
+                        pageIndex,
+                        context
+                    );
                 }
+            } catch (IOException e) {
+                // just ignore it
             }
         }
     }
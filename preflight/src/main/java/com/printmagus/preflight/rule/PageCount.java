@@ -44,4 +44,16 @@ public class PageCount extends AbstractRule
             violations.add(violation);
         }
     }
+
+    @Override
+    public int getCost()
+    {
+        return 1;
+    }
+
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint(min, max);
+    }
 }
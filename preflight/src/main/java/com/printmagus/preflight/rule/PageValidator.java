@@ -0,0 +1,11 @@
+package com.printmagus.preflight.rule;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.util.List;
+
+public interface PageValidator
+{
+    void validatePage(PDPage page, Integer pageIndex, List<Violation> violations);
+}
@@ -0,0 +1,12 @@
+package com.printmagus.preflight.rule;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.util.List;
+
+public interface ResourceValidator
+{
+    void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations);
+}
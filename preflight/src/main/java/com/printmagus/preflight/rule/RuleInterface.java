@@ -1,7 +1,43 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.PreflightInterface;
+import com.printmagus.preflight.ValidationContext;
 
 public interface RuleInterface extends PreflightInterface
 {
+    /**
+     * Rules which do not share the page and resource lookups of the validation ignore the context.
+     */
+    default void setContext(ValidationContext context)
+    {
+        // Nothing to do
+    }
+
+    /**
+     * Rules which do not declare a scope are validated with the whole document, as before.
+     */
+    default RuleScope getScope()
+    {
+        return RuleScope.DOCUMENT;
+    }
+
+    /**
+     * A relative estimate of the cost of the rule, cheaper rules are run first within a phase.
+     *
+     * Roughly: 1 for a lookup in the trailer or the catalog, 10 for walking the pages or resources,
+     * 100 for walking every object of the document and 1000 for decoding image samples.
+     */
+    default int getCost()
+    {
+        return 10;
+    }
+
+    /**
+     * Identifies the rule and its parameters, rules with the same fingerprint report the same violations.
+     * Rules without parameters are identified by their name alone.
+     */
+    default String getFingerprint()
+    {
+        return this.getClass().getSimpleName();
+    }
 }
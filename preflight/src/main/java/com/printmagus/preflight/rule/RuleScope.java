@@ -0,0 +1,19 @@
+package com.printmagus.preflight.rule;
+
+/**
+ * Declares what a rule looks at, so Preflight can run every rule of the same phase together.
+ *
+ * - DOCUMENT: the rule is called once with the whole document (RuleInterface.validate)
+ * - PAGE: the rule is called for every page (PageValidator)
+ * - RESOURCE: the rule is called with the resources of every page (ResourceValidator)
+ * - XOBJECT: the rule is called for every XObject drawn (XObjectValidator)
+ * - OPERATOR: the rule listens to the content stream (ContentStreamValidator)
+ */
+public enum RuleScope
+{
+    DOCUMENT,
+    PAGE,
+    RESOURCE,
+    XOBJECT,
+    OPERATOR
+}
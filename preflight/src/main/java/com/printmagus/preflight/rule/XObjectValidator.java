@@ -1,9 +1,11 @@
 package com.printmagus.preflight.rule;
 
 import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.util.ImageInfo;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 
 import java.util.List;
@@ -11,4 +13,57 @@ import java.util.List;
 public interface XObjectValidator
 {
     List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, PDGraphicsState graphicsState);
+
+    /**
+     * Called by the stream engine, which knows the index of the page. Validators which report the page index
+     * override it, the others only implement the method without it.
+     */
+    default List<Violation> validate(COSName objectName, PDXObject xobject, PDPage page, Integer pageIndex, PDGraphicsState graphicsState)
+    {
+        return validate(objectName, xobject, page, graphicsState);
+    }
+
+    /**
+     * Called by the stream engine instead of validate() for images, with the metadata shared by every
+     * placement of the image.
+     */
+    default List<Violation> validateImage(
+        COSName objectName,
+        PDImageXObject image,
+        ImageInfo info,
+        PDPage page,
+        Integer pageIndex,
+        PDGraphicsState graphicsState
+    )
+    {
+        return validate(objectName, image, page, pageIndex, graphicsState);
+    }
+
+    /**
+     * Heavy validators (eg. the ones decoding the image) run in a separate bulkhead of the executor.
+     */
+    default boolean isHeavy()
+    {
+        return false;
+    }
+
+    /**
+     * Validators which bound the cost of large images themselves (eg. by sampling them) are still handed the
+     * images above the max image area of the stream engine, the others do not see them.
+     */
+    default boolean isImageCostBounded()
+    {
+        return false;
+    }
+
+    /**
+     * The result only depends on the XObject itself, not on the page or where it is placed.
+     *
+     * The stream engine validates such XObjects once per document, and repeats the violations for every
+     * other placement.
+     */
+    default boolean isPlacementIndependent()
+    {
+        return false;
+    }
 }
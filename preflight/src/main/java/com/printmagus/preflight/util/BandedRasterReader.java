@@ -0,0 +1,369 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads very large images with the decoding and the analysis overlapped, and the analysis split into bands.
+ *
+ * A decoder thread reads the packed rows, a band (about 1 MB) at a time, into a bounded queue of reused buffers.
+ * Every band is unpacked and reduced by a task of the fork-join pool with a reducer of its own, the parts are
+ * merged in band order by the calling thread, so no reducer is shared between threads. The bands and rows are
+ * borrowed from the {@link BufferPool}.
+ *
+ * The decoding itself stays sequential: Flate can not be split, and the streams of PDFBox share a single file
+ * position. PDFBox inflates a whole stream before returning it, so Flate images (without a predictor, or with
+ * a PNG predictor) are inflated here while they are read, and never held in memory at once.
+ */
+final public class BandedRasterReader
+{
+    /**
+     * Smaller images are read by SampledRasterReader.read() on the calling thread.
+     */
+    public static final long MIN_SAMPLES = 16L * 1024 * 1024;
+
+    private static final int BAND_BYTES = 1024 * 1024;
+
+    private static final ExecutorService decoders = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "preflight-decode-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    });
+
+    private BandedRasterReader()
+    {
+    }
+
+    /**
+     * @see SampledRasterReader#read(PDImage, COSArray, RowReducer)
+     */
+    public static void read(PDImage pdImage, COSArray colorKey, MergeableRowReducer reducer, ForkJoinPool pool)
+        throws IOException
+    {
+        final int numComponents = pdImage.getColorSpace().getNumberOfComponents();
+        final int width = pdImage.getWidth();
+        final int height = pdImage.getHeight();
+
+        if (pool == null || pdImage.isEmpty() || (long) width * height * numComponents < MIN_SAMPLES) {
+            SampledRasterReader.read(pdImage, colorKey, reducer);
+
+            return;
+        }
+
+        reducer.begin(width, height, numComponents);
+
+        final RowUnpacker unpacker = RowUnpacker.of(pdImage, colorKey);
+        final int packedLength = unpacker.getPackedLength();
+        final int bandRows = Math.max(1, BAND_BYTES / packedLength);
+        final int inFlight = pool.getParallelism() + 1;
+        final Deadline deadline = Deadline.current();
+
+        final BufferPool bufferPool = BufferPool.getDefault();
+
+        BlockingQueue<Band> free = new ArrayBlockingQueue<>(inFlight + 1);
+        BlockingQueue<Band> full = new ArrayBlockingQueue<>(inFlight + 2);
+
+        for (int i = 0; i <= inFlight; i++) {
+            free.add(new Band(bufferPool.borrow(bandRows * packedLength)));
+        }
+
+        Future<?> decoder = decoders.submit(() -> decode(pdImage, height, packedLength, bandRows, free, full));
+        Deque<Part> parts = new ArrayDeque<>();
+
+        try {
+            while (!reducer.isDone()) {
+                Band band = full.poll(50, TimeUnit.MILLISECONDS);
+
+                deadline.check();
+
+                if (band == null) {
+                    continue;
+                }
+
+                if (band.error != null) {
+                    throw band.error;
+                }
+
+                if (band.rows == 0) {
+                    break;
+                }
+
+                if (!reducer.hasMoreRows(band.y)) {
+                    free.add(band);
+
+                    break;
+                }
+
+                if (band.length != band.rows * packedLength && !unpacker.isTruncationAllowed()) {
+                    throw new EOFException();
+                }
+
+                // Bands without a needed row (eg. between the rows of a sample) go straight back to the decoder
+                if (isNeeded(band, reducer)) {
+                    parts.add(new Part(band, pool.submit(() -> reduce(band, unpacker, reducer, deadline))));
+                } else {
+                    free.add(band);
+                }
+
+                if (parts.size() >= inFlight) {
+                    merge(parts.poll(), reducer, free);
+                }
+
+                if (band.length != band.rows * packedLength) {
+                    break;
+                }
+            }
+
+            while (!parts.isEmpty()) {
+                merge(parts.poll(), reducer, free);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ValidationCancelledException("Interrupted while reading the image");
+        } finally {
+            decoder.cancel(true);
+
+            for (Part part: parts) {
+                part.future.cancel(false);
+            }
+
+            // Taken out of the queues, the decoder may still be running. The bands of cancelled parts may
+            // still be read, they are left to the garbage collector
+            Band band;
+
+            while ((band = free.poll()) != null || (band = full.poll()) != null) {
+                bufferPool.release(band.data);
+            }
+        }
+    }
+
+    private static boolean isNeeded(Band band, RowReducer reducer)
+    {
+        for (int r = 0; r < band.rows; r++) {
+            if (reducer.isRowNeeded(band.y + r)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static MergeableRowReducer reduce(Band band, RowUnpacker unpacker, MergeableRowReducer reducer, Deadline deadline)
+    {
+        MergeableRowReducer part = reducer.create();
+        BufferPool bufferPool = BufferPool.getDefault();
+        byte[] row = bufferPool.borrow(unpacker.getRowLength());
+        int packedLength = unpacker.getPackedLength();
+
+        try {
+            for (int r = 0; r < band.rows; r++) {
+                int offset = r * packedLength;
+
+                if (offset >= band.length) {
+                    break;
+                }
+
+                if (!part.isRowNeeded(band.y + r)) {
+                    continue;
+                }
+
+                deadline.check();
+                unpacker.unpack(band.data, offset, Math.min(packedLength, band.length - offset), row);
+                part.row(band.y + r, row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            bufferPool.release(row);
+        }
+
+        return part;
+    }
+
+    private static void merge(Part part, MergeableRowReducer reducer, BlockingQueue<Band> free)
+        throws IOException, InterruptedException
+    {
+        try {
+            reducer.merge(part.future.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+
+        free.add(part.band);
+    }
+
+    /**
+     * Runs on the decoder thread, a band with no rows marks the end.
+     */
+    private static void decode(
+        PDImage pdImage,
+        int height,
+        int packedLength,
+        int bandRows,
+        BlockingQueue<Band> free,
+        BlockingQueue<Band> full
+    )
+    {
+        InputStream input = null;
+
+        try {
+            input = open(pdImage);
+
+            for (int y = 0; y < height; y += bandRows) {
+                Band band = free.take();
+
+                band.y = y;
+                band.rows = Math.min(bandRows, height - y);
+                band.length = read(input, band.data, band.rows * packedLength, y == 0);
+
+                full.put(band);
+
+                if (band.length != band.rows * packedLength) {
+                    return;
+                }
+            }
+
+            full.put(new Band(null));
+        } catch (InterruptedException e) {
+            // Cancelled, nobody waits for the end anymore
+        } catch (IOException e) {
+            Band band = new Band(null);
+            band.error = e;
+
+            full.offer(band);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Like PDFBox, a Flate stream which breaks off after some data is read up to there.
+     */
+    private static int read(InputStream input, byte[] buffer, int length, boolean first) throws IOException
+    {
+        int offset = 0;
+
+        try {
+            while (offset < length) {
+                int read = input.read(buffer, offset, length - offset);
+
+                if (read < 0) {
+                    break;
+                }
+
+                offset += read;
+            }
+        } catch (ZipException | EOFException e) {
+            if (first && offset == 0) {
+                throw e;
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Flate images are inflated while they are read, anything else is decoded by PDFBox.
+     */
+    private static InputStream open(PDImage pdImage) throws IOException
+    {
+        if (!(pdImage instanceof PDImageXObject)) {
+            return pdImage.createInputStream();
+        }
+
+        COSStream stream = ((PDImageXObject) pdImage).getCOSObject();
+        COSBase filters = stream.getFilters();
+
+        if (filters instanceof COSArray && ((COSArray) filters).size() == 1) {
+            filters = ((COSArray) filters).getObject(0);
+        }
+
+        if (!COSName.FLATE_DECODE.equals(filters) && !COSName.FLATE_DECODE_ABBREVIATION.equals(filters)) {
+            return pdImage.createInputStream();
+        }
+
+        COSBase parameters = stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP);
+
+        if (parameters instanceof COSArray && ((COSArray) parameters).size() == 1) {
+            parameters = ((COSArray) parameters).getObject(0);
+        }
+
+        COSDictionary dictionary = parameters instanceof COSDictionary ? (COSDictionary) parameters : null;
+        int predictor = dictionary == null ? 1 : dictionary.getInt(COSName.PREDICTOR, 1);
+
+        if (predictor > 1 && predictor < 10) {
+            // TIFF predictor
+            return pdImage.createInputStream();
+        }
+
+        InputStream inflated = new InflaterInputStream(new BufferedInputStream(stream.createRawInputStream(), 64 * 1024));
+
+        if (predictor == 1) {
+            return inflated;
+        }
+
+        return new PngPredictorInputStream(
+            inflated,
+            dictionary.getInt(COSName.COLORS, 1),
+            dictionary.getInt(COSName.BITS_PER_COMPONENT, 8),
+            dictionary.getInt(COSName.COLUMNS, 1)
+        );
+    }
+
+    private static class Band
+    {
+        final byte[] data;
+        int y;
+        int rows;
+        int length;
+        IOException error;
+
+        Band(byte[] data)
+        {
+            this.data = data;
+        }
+    }
+
+    private static class Part
+    {
+        final Band band;
+        final Future<MergeableRowReducer> future;
+
+        Part(Band band, Future<MergeableRowReducer> future)
+        {
+            this.band = band;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.printmagus.preflight.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reuses the scratch buffers of the image decoding (packed rows, unpacked rows, bands) instead of allocating
+ * them for every image.
+ *
+ * The buffers are grouped in size classes, the powers of two from 4 KB to 64 MB, a borrowed buffer is at least
+ * as long as requested. Every thread keeps one buffer per size class for itself, the buffers returned beyond
+ * that go to a shared list. The pooled bytes of both levels are capped, a buffer returned to a full pool is
+ * left to the garbage collector. Larger buffers are never pooled.
+ *
+ * A buffer may be returned by another thread than the one which borrowed it (the bands of BandedRasterReader).
+ */
+public class BufferPool
+{
+    private static final int MIN_CLASS = 12;
+    private static final int MAX_CLASS = 26;
+
+    private static BufferPool defaultPool;
+
+    private final long maxRetainedBytes;
+    private final ThreadLocal<Stash> stashes = ThreadLocal.withInitial(this::createStash);
+    private final Map<Stash, Thread> owners = new ConcurrentHashMap<>();
+    private final List<ConcurrentLinkedDeque<byte[]>> shared = new ArrayList<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    public BufferPool(long maxRetainedBytes)
+    {
+        this.maxRetainedBytes = maxRetainedBytes;
+
+        // Indexed by size class, the classes below MIN_CLASS are never used
+        for (int i = 0; i <= MAX_CLASS; i++) {
+            shared.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * The pool used by the image readers, by default it keeps up to 1/16 of the heap (at most 256 MB).
+     */
+    public static synchronized BufferPool getDefault()
+    {
+        if (defaultPool == null) {
+            defaultPool = new BufferPool(Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16));
+        }
+
+        return defaultPool;
+    }
+
+    public static synchronized void setDefault(BufferPool pool)
+    {
+        defaultPool = pool;
+    }
+
+    /**
+     * Returns a buffer of at least the given length, its content is undefined.
+     */
+    public byte[] borrow(int length)
+    {
+        borrows.incrementAndGet();
+
+        int sizeClass = sizeClass(length);
+
+        if (sizeClass < 0) {
+            return new byte[length];
+        }
+
+        byte[] buffer = stashes.get().buffers.getAndSet(sizeClass, null);
+
+        if (buffer == null) {
+            buffer = shared.get(sizeClass).pollFirst();
+        }
+
+        if (buffer == null) {
+            return new byte[1 << sizeClass];
+        }
+
+        hits.incrementAndGet();
+        retainedBytes.addAndGet(-buffer.length);
+
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool, it must not be used afterwards. Null is ignored.
+     */
+    public void release(byte[] buffer)
+    {
+        if (buffer == null) {
+            return;
+        }
+
+        int sizeClass = sizeClass(buffer.length);
+
+        // Not borrowed from a pool
+        if (sizeClass < 0 || buffer.length != 1 << sizeClass) {
+            return;
+        }
+
+        if (!reserve(buffer.length)) {
+            purge();
+
+            if (!reserve(buffer.length)) {
+                return;
+            }
+        }
+
+        if (!stashes.get().buffers.compareAndSet(sizeClass, null, buffer)) {
+            shared.get(sizeClass).offerFirst(buffer);
+        }
+    }
+
+    public long getBorrows()
+    {
+        return borrows.get();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * The share of the borrowed buffers which were reused, 0 - 1.
+     */
+    public double getHitRate()
+    {
+        long borrows = this.borrows.get();
+
+        return borrows == 0 ? 0 : (double) hits.get() / borrows;
+    }
+
+    /**
+     * The bytes currently kept by the pool.
+     */
+    public long getRetainedBytes()
+    {
+        return retainedBytes.get();
+    }
+
+    public long getMaxRetainedBytes()
+    {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Drops every pooled buffer.
+     */
+    public void clear()
+    {
+        for (Stash stash: owners.keySet()) {
+            stash.clear();
+        }
+
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            byte[] buffer;
+
+            while ((buffer = shared.get(i).pollFirst()) != null) {
+                retainedBytes.addAndGet(-buffer.length);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "BufferPool(borrows: %d, hit rate: %.1f%%, retained: %d of %d bytes)",
+            getBorrows(),
+            getHitRate() * 100,
+            getRetainedBytes(),
+            maxRetainedBytes
+        );
+    }
+
+    private boolean reserve(int length)
+    {
+        long retained;
+
+        do {
+            retained = retainedBytes.get();
+
+            if (retained + length > maxRetainedBytes) {
+                return false;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + length));
+
+        return true;
+    }
+
+    /**
+     * The buffers kept by threads which have ended are given up, they would count against the cap forever.
+     */
+    private void purge()
+    {
+        Iterator<Map.Entry<Stash, Thread>> iterator = owners.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Stash, Thread> entry = iterator.next();
+
+            if (!entry.getValue().isAlive()) {
+                entry.getKey().clear();
+                iterator.remove();
+            }
+        }
+    }
+
+    private Stash createStash()
+    {
+        Stash stash = new Stash();
+        owners.put(stash, Thread.currentThread());
+
+        return stash;
+    }
+
+    private static int sizeClass(int length)
+    {
+        int sizeClass = Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(0, length - 1)));
+
+        return sizeClass <= MAX_CLASS ? sizeClass : -1;
+    }
+
+    private class Stash
+    {
+        // Atomic, clear() is called by other threads than the owner
+        private final AtomicReferenceArray<byte[]> buffers = new AtomicReferenceArray<>(MAX_CLASS + 1);
+
+        void clear()
+        {
+            for (int i = 0; i < buffers.length(); i++) {
+                byte[] buffer = buffers.getAndSet(i, null);
+
+                if (buffer != null) {
+                    retainedBytes.addAndGet(-buffer.length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.printmagus.preflight.util;
+
+/**
+ * A point in time after which the validation should give up.
+ *
+ * The deadline of the running rule is bound to the current thread, so long loops (eg. decoding image
+ * samples) can check it cooperatively with {@link #current()} without passing it through every call.
+ */
+final public class Deadline
+{
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE, false);
+    private static final ThreadLocal<Deadline> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    private final long nanos;
+    private final boolean finite;
+
+    private Deadline(long nanos, boolean finite)
+    {
+        this.nanos = nanos;
+        this.finite = finite;
+    }
+
+    public static Deadline none()
+    {
+        return NONE;
+    }
+
+    /**
+     * Null or a non-positive timeout means no deadline.
+     */
+    public static Deadline after(Long millis)
+    {
+        if (millis == null || millis <= 0) {
+            return NONE;
+        }
+
+        return new Deadline(System.nanoTime() + millis * 1000000L, true);
+    }
+
+    public boolean isExpired()
+    {
+        return finite && System.nanoTime() - nanos >= 0;
+    }
+
+    public void check() throws DeadlineExceededException
+    {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded");
+        }
+    }
+
+    public Deadline earliest(Deadline other)
+    {
+        if (!finite) {
+            return other;
+        }
+
+        if (!other.finite) {
+            return this;
+        }
+
+        return nanos - other.nanos <= 0 ? this : other;
+    }
+
+    public static Deadline current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the deadline to the current thread, returns the previous one to be restored with {@link #restore(Deadline)}.
+     */
+    public static Deadline enter(Deadline deadline)
+    {
+        Deadline previous = CURRENT.get();
+
+        CURRENT.set(deadline);
+
+        return previous;
+    }
+
+    public static void restore(Deadline previous)
+    {
+        CURRENT.set(previous);
+    }
+}
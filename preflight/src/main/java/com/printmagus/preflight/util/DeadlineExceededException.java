@@ -0,0 +1,11 @@
+package com.printmagus.preflight.util;
+
+public class DeadlineExceededException extends ValidationCancelledException
+{
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,142 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.MemoryPolicy;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A rough estimate of the heap needed to validate a document.
+ *
+ * The estimate of a file only knows its size, it is cheap enough to be taken before a document is admitted.
+ * The estimate of a loaded document adds the pages and images: only the dictionaries are read (page tree,
+ * resources, image sizes), no stream is decoded. Images used on several pages are counted once.
+ */
+public class DocumentEstimate
+{
+    // Parsed COS objects are a multiple of their serialized size
+    private static final long FILE_FACTOR = 2;
+    // Graphics state, resources and handler state of a page being processed
+    private static final long BYTES_PER_PAGE = 64 * 1024;
+    // MaxInkDensityImage streams the rows of an image in bands, but filters other than Flate are decoded by PDFBox,
+    // DCT into a raster of the whole image: 4 bytes per CMYK pixel
+    private static final long BYTES_PER_PIXEL = 4;
+
+    private final long fileSize;
+    private final int pageCount;
+    private final long imagePixels;
+    private final long largestImagePixels;
+
+    public DocumentEstimate(long fileSize, int pageCount, long imagePixels, long largestImagePixels)
+    {
+        this.fileSize = fileSize;
+        this.pageCount = pageCount;
+        this.imagePixels = imagePixels;
+        this.largestImagePixels = largestImagePixels;
+    }
+
+    /**
+     * The file is not parsed, the pages and images are 0 until the document is loaded.
+     */
+    public static DocumentEstimate of(File file)
+    {
+        return new DocumentEstimate(file.length(), 0, 0, 0);
+    }
+
+    /**
+     * Refines the estimate of the file with the pages and images of the document loaded from it.
+     */
+    public static DocumentEstimate of(File file, PDDocument document)
+    {
+        Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        long[] pixels = new long[2];
+
+        for (PDPage page: document.getPages()) {
+            countImages(page.getCOSObject().getDictionaryObject(COSName.RESOURCES), visited, pixels);
+        }
+
+        return new DocumentEstimate(file.length(), document.getNumberOfPages(), pixels[0], pixels[1]);
+    }
+
+    /**
+     * Adds the pixels of the images in the resources, and of the forms used by them, to [total, largest].
+     */
+    private static void countImages(COSBase resources, Set<COSBase> visited, long[] pixels)
+    {
+        if (!(resources instanceof COSDictionary) || !visited.add(resources)) {
+            return;
+        }
+
+        COSBase xobjects = ((COSDictionary) resources).getDictionaryObject(COSName.XOBJECT);
+
+        if (!(xobjects instanceof COSDictionary)) {
+            return;
+        }
+
+        for (COSName name: ((COSDictionary) xobjects).keySet()) {
+            COSBase xobject = ((COSDictionary) xobjects).getDictionaryObject(name);
+
+            if (!(xobject instanceof COSStream) || !visited.add(xobject)) {
+                continue;
+            }
+
+            COSStream stream = (COSStream) xobject;
+
+            if (stream.getCOSName(COSName.SUBTYPE) == COSName.IMAGE) {
+                long area = (long) stream.getInt(COSName.WIDTH, 0) * stream.getInt(COSName.HEIGHT, 0);
+
+                pixels[0] += area;
+                pixels[1] = Math.max(pixels[1], area);
+            } else if (stream.getCOSName(COSName.SUBTYPE) == COSName.FORM) {
+                countImages(stream.getDictionaryObject(COSName.RESOURCES), visited, pixels);
+            }
+        }
+    }
+
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
+    public long getImagePixels()
+    {
+        return imagePixels;
+    }
+
+    public long getLargestImagePixels()
+    {
+        return largestImagePixels;
+    }
+
+    /**
+     * Pages are processed one at a time and only the largest image has to be decoded at once,
+     * so the image total is not a part of the heap estimate.
+     */
+    public long getHeapBytes()
+    {
+        return getHeapBytes(MemoryPolicy.heap());
+    }
+
+    /**
+     * The stream data kept in a scratch file does not count.
+     */
+    public long getHeapBytes(MemoryPolicy policy)
+    {
+        return policy.getHeapLimit(fileSize) * FILE_FACTOR
+            + pageCount * BYTES_PER_PAGE
+            + largestImagePixels * BYTES_PER_PIXEL;
+    }
+}
@@ -0,0 +1,66 @@
+package com.printmagus.preflight.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hex encoded SHA-256 digests, files are streamed.
+ */
+public class FileDigest
+{
+    public static String of(File file) throws IOException
+    {
+        return of(file, Long.MAX_VALUE);
+    }
+
+    /**
+     * The digest of the first bytes of the file, at most length.
+     */
+    public static String of(File file, long length) throws IOException
+    {
+        MessageDigest digest = create();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream input = new FileInputStream(file)) {
+            long remaining = length;
+            int read;
+
+            while (remaining > 0 && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    public static String of(String text) throws IOException
+    {
+        return hex(create().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest create() throws IOException
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b: bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+}
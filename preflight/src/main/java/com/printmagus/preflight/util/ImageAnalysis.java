@@ -0,0 +1,42 @@
+package com.printmagus.preflight.util;
+
+/**
+ * What was computed for an image, as stored in the {@link ImageAnalysisCache}.
+ *
+ * Values which were not computed are null.
+ */
+public class ImageAnalysis
+{
+    private final int width;
+    private final int height;
+    private final String colorSpace;
+    private final Float maxInkDensity;
+
+    public ImageAnalysis(int width, int height, String colorSpace, Float maxInkDensity)
+    {
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+        this.maxInkDensity = maxInkDensity;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public String getColorSpace()
+    {
+        return colorSpace;
+    }
+
+    public Float getMaxInkDensity()
+    {
+        return maxInkDensity;
+    }
+}
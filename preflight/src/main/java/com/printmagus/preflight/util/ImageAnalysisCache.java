@@ -0,0 +1,413 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of image analysis results, shared by every document validated on this machine.
+ *
+ * The key is a SHA-256 digest of the raw (still encoded) image bytes and of the dictionary entries which
+ * change how they are decoded, with the streams they refer to, so the same image found in another file,
+ * or in a corrected version of the same file, is a hit.
+ *
+ * The records live in a memory-mapped file of a fixed size. It is set associative: a key can only be stored
+ * in the 8 slots of its set, and the least recently used slot of the set is evicted. The file can be shared
+ * by the threads of one process, it is locked against the other processes.
+ *
+ * A record is marked empty while it is written and only marked used once the key and the analysis are in
+ * place, so a process which dies in the middle of a write leaves an empty slot instead of a wrong result.
+ */
+public class ImageAnalysisCache implements Closeable
+{
+    private static final int MAGIC = 0x50464943;
+    private static final int VERSION = 2;
+    private static final int HEADER = 64;
+    private static final int WAYS = 8;
+    private static final int RECORD = 64;
+    private static final int KEY = 32;
+    private static final int COLOR_SPACE = 12;
+
+    // Record layout: key, last used (0 = empty), width, height, max ink density (NaN = unknown), color space
+    private static final int LAST_USED = 32;
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 44;
+    private static final int INK = 48;
+    private static final int NAME = 52;
+
+    private static final COSName[] DECODE_KEYS = {
+        COSName.FILTER, COSName.DECODE_PARMS, COSName.WIDTH, COSName.HEIGHT, COSName.BITS_PER_COMPONENT,
+        COSName.COLORSPACE, COSName.DECODE, COSName.IMAGE_MASK, COSName.MASK
+    };
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int sets;
+    private final Object[] locks;
+    private final AtomicLong clock;
+
+    /**
+     * @param capacity the number of records, the file takes 64 bytes per record
+     * @throws IOException if the file is too large to be mapped, or is used by another process
+     */
+    public ImageAnalysisCache(File path, int capacity) throws IOException
+    {
+        this.sets = (int) Math.max(1, ((long) capacity + WAYS - 1) / WAYS);
+        this.locks = new Object[Math.min(sets, 64)];
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        long size = HEADER + (long) sets * WAYS * RECORD;
+
+        // A single mapping is limited to 2 GB, the offsets of the records are ints
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image analysis cache of " + capacity + " records is too large to be mapped");
+        }
+
+        this.file = new RandomAccessFile(path, "rw");
+
+        try {
+            this.buffer = open(size);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        this.clock = new AtomicLong(buffer.getLong(16));
+    }
+
+    private MappedByteBuffer open(long size) throws IOException
+    {
+        FileLock lock;
+
+        try {
+            lock = file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+
+        // The lock is released when the file is closed
+        if (lock == null) {
+            throw new IOException("Image analysis cache is used by another process");
+        }
+
+        // A file of another version or geometry is started over
+        boolean valid = file.length() == size
+            && file.readInt() == MAGIC
+            && file.readInt() == VERSION
+            && file.readInt() == sets;
+
+        if (!valid) {
+            file.setLength(0);
+            file.setLength(size);
+        }
+
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (!valid) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, sets);
+            buffer.putLong(16, 0);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * The digest of the raw bytes and the decoding parameters of the image.
+     */
+    public static byte[] digest(PDImageXObject image) throws IOException
+    {
+        MessageDigest digest = createDigest();
+        COSStream stream = image.getCOSObject();
+
+        for (COSName key: DECODE_KEYS) {
+            digest.update(key.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update(describe(stream.getDictionaryObject(key), 0).getBytes(StandardCharsets.UTF_8));
+        }
+
+        update(digest, stream);
+
+        return digest.digest();
+    }
+
+    private static MessageDigest createDigest() throws IOException
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, COSStream stream) throws IOException
+    {
+        byte[] chunk = new byte[64 * 1024];
+
+        try (InputStream input = stream.createRawInputStream()) {
+            int read;
+
+            while ((read = input.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+        }
+    }
+
+    /**
+     * A canonical text form of a COS value, without object numbers, so equal values of different files match.
+     */
+    private static String describe(COSBase value, int depth) throws IOException
+    {
+        if (value instanceof COSObject) {
+            value = ((COSObject) value).getObject();
+        }
+
+        if (value == null || depth > 8) {
+            return "null";
+        }
+
+        if (value instanceof COSName) {
+            return "/" + ((COSName) value).getName();
+        }
+
+        if (value instanceof COSNumber) {
+            return String.valueOf(((COSNumber) value).floatValue());
+        }
+
+        if (value instanceof COSBoolean) {
+            return String.valueOf(((COSBoolean) value).getValue());
+        }
+
+        if (value instanceof COSString) {
+            return "(" + ((COSString) value).toHexString() + ")";
+        }
+
+        if (value instanceof COSArray) {
+            StringBuilder builder = new StringBuilder("[");
+
+            for (COSBase item: (COSArray) value) {
+                builder.append(describe(item, depth + 1)).append(' ');
+            }
+
+            return builder.append(']').toString();
+        }
+
+        if (value instanceof COSDictionary) {
+            COSDictionary dictionary = (COSDictionary) value;
+            List<String> keys = new ArrayList<>();
+
+            for (COSName key: dictionary.keySet()) {
+                keys.add(key.getName());
+            }
+
+            Collections.sort(keys);
+
+            StringBuilder builder = new StringBuilder("<<");
+
+            for (String key: keys) {
+                builder.append('/').append(key).append(' ');
+                builder.append(describe(dictionary.getDictionaryObject(key), depth + 1)).append(' ');
+            }
+
+            builder.append(">>");
+
+            // Embedded streams (eg. the lookup table of an Indexed color space, ICC profiles) change the
+            // samples, their raw bytes are a part of the key: with the filters above they fix the decoded bytes
+            if (value instanceof COSStream) {
+                MessageDigest digest = createDigest();
+
+                update(digest, (COSStream) value);
+                builder.append(" stream ").append(new COSString(digest.digest()).toHexString());
+            }
+
+            return builder.toString();
+        }
+
+        return value.getClass().getSimpleName();
+    }
+
+    public ImageAnalysis get(byte[] key)
+    {
+        int set = getSet(key);
+
+        synchronized (locks[set % locks.length]) {
+            int slot = find(set, key);
+
+            if (slot < 0) {
+                return null;
+            }
+
+            ByteBuffer record = record(slot);
+
+            buffer.putLong(slot + LAST_USED, clock.incrementAndGet());
+
+            float ink = record.getFloat(INK);
+            byte[] name = new byte[COLOR_SPACE];
+
+            record.position(NAME);
+            record.get(name);
+
+            return new ImageAnalysis(
+                record.getInt(WIDTH),
+                record.getInt(HEIGHT),
+                decodeName(name),
+                Float.isNaN(ink) ? null : ink
+            );
+        }
+    }
+
+    public void put(byte[] key, ImageAnalysis analysis)
+    {
+        int set = getSet(key);
+
+        synchronized (locks[set % locks.length]) {
+            int slot = find(set, key);
+
+            if (slot < 0) {
+                slot = evict(set);
+            }
+
+            ByteBuffer record = record(slot);
+
+            // The slot is empty until the key and the analysis are written
+            record.putLong(LAST_USED, 0);
+            record.putInt(WIDTH, analysis.getWidth());
+            record.putInt(HEIGHT, analysis.getHeight());
+            record.putFloat(INK, analysis.getMaxInkDensity() == null ? Float.NaN : analysis.getMaxInkDensity());
+            record.position(NAME);
+            record.put(encodeName(analysis.getColorSpace()));
+            record.position(0);
+            record.put(key, 0, KEY);
+            record.putLong(LAST_USED, clock.incrementAndGet());
+
+            buffer.putLong(16, clock.get());
+        }
+    }
+
+    /**
+     * Writes the mapped records to the disk.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        buffer.force();
+        file.close();
+    }
+
+    private int getSet(byte[] key)
+    {
+        long hash = ByteBuffer.wrap(key).getLong();
+
+        return (int) Math.floorMod(hash, (long) sets);
+    }
+
+    /**
+     * Returns the offset of the record with the key in the set, or -1.
+     */
+    private int find(int set, byte[] key)
+    {
+        byte[] stored = new byte[KEY];
+
+        for (int way = 0; way < WAYS; way++) {
+            int offset = offset(set, way);
+
+            if (buffer.getLong(offset + LAST_USED) == 0) {
+                continue;
+            }
+
+            ByteBuffer record = record(offset);
+
+            record.get(stored);
+
+            if (Arrays.equals(stored, key)) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * An empty slot of the set, or the least recently used one.
+     */
+    private int evict(int set)
+    {
+        int victim = offset(set, 0);
+        long oldest = Long.MAX_VALUE;
+
+        for (int way = 0; way < WAYS; way++) {
+            int offset = offset(set, way);
+            long used = buffer.getLong(offset + LAST_USED);
+
+            if (used < oldest) {
+                oldest = used;
+                victim = offset;
+            }
+        }
+
+        return victim;
+    }
+
+    private int offset(int set, int way)
+    {
+        return HEADER + (set * WAYS + way) * RECORD;
+    }
+
+    /**
+     * A view of a single record, positions of the shared buffer are never touched.
+     */
+    private ByteBuffer record(int offset)
+    {
+        ByteBuffer record = buffer.duplicate();
+
+        record.position(offset);
+        record.limit(offset + RECORD);
+
+        return record.slice();
+    }
+
+    private static byte[] encodeName(String name)
+    {
+        byte[] encoded = new byte[COLOR_SPACE];
+
+        if (name != null) {
+            byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+
+            System.arraycopy(bytes, 0, encoded, 0, Math.min(bytes.length, COLOR_SPACE));
+        }
+
+        return encoded;
+    }
+
+    private static String decodeName(byte[] name)
+    {
+        int length = 0;
+
+        while (length < name.length && name[length] != 0) {
+            length++;
+        }
+
+        return length == 0 ? null : new String(name, 0, length, StandardCharsets.US_ASCII);
+    }
+}
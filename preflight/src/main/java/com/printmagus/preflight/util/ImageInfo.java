@@ -0,0 +1,66 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+
+/**
+ * The metadata of an image, read once per image stream and shared by every placement of it.
+ */
+public class ImageInfo
+{
+    private final int width;
+    private final int height;
+    private final int bitsPerComponent;
+    private final COSName colorSpace;
+
+    public ImageInfo(int width, int height, int bitsPerComponent, COSName colorSpace)
+    {
+        this.width = width;
+        this.height = height;
+        this.bitsPerComponent = bitsPerComponent;
+        this.colorSpace = colorSpace;
+    }
+
+    public static ImageInfo of(PDImageXObject image)
+    {
+        COSName colorSpace;
+
+        try {
+            colorSpace = ColorSpaceName.get(image);
+        } catch (IOException e) {
+            colorSpace = null;
+        }
+
+        return new ImageInfo(image.getWidth(), image.getHeight(), image.getBitsPerComponent(), colorSpace);
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public long getArea()
+    {
+        return (long) width * height;
+    }
+
+    public int getBitsPerComponent()
+    {
+        return bitsPerComponent;
+    }
+
+    /**
+     * The name of the color space (the base color space of indexed images), null if it is invalid.
+     */
+    public COSName getColorSpace()
+    {
+        return colorSpace;
+    }
+}
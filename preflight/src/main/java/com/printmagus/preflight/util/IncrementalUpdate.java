@@ -0,0 +1,249 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The objects which were added or replaced by the incremental updates appended to a file.
+ *
+ * An incremental update only appends to the file, so every object whose xref entry points past the previous
+ * end of the file (or into an object stream found there) is new. A page is affected if any object reachable
+ * from it - its contents, resources, annotations and the attributes inherited from its parents - changed.
+ */
+public class IncrementalUpdate
+{
+    private static final COSName[] INHERITABLE = {
+        COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.ROTATE
+    };
+
+    private final Set<COSBase> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private IncrementalUpdate()
+    {
+    }
+
+    /**
+     * @param previousLength the length of the file before the updates were appended
+     */
+    public static IncrementalUpdate of(PDDocument document, long previousLength) throws IOException
+    {
+        IncrementalUpdate update = new IncrementalUpdate();
+        COSDocument cos = document.getDocument();
+        Map<COSObjectKey, Long> xref = cos.getXrefTable();
+
+        for (Map.Entry<COSObjectKey, Long> entry: xref.entrySet()) {
+            Long offset = entry.getValue();
+
+            if (offset == null) {
+                continue;
+            }
+
+            // Negative offsets are the numbers of the object streams containing the object
+            if (offset < 0) {
+                offset = xref.get(new COSObjectKey(-offset, 0));
+
+                if (offset == null) {
+                    continue;
+                }
+            }
+
+            if (offset < previousLength) {
+                continue;
+            }
+
+            COSBase object = cos.getObjectFromPool(entry.getKey()).getObject();
+
+            if (object == null) {
+                continue;
+            }
+
+            update.changed.add(object);
+        }
+
+        return update;
+    }
+
+    public boolean isEmpty()
+    {
+        return changed.isEmpty();
+    }
+
+    /**
+     * The object numbers of the pages, in page order, -1 for a page which is not an indirect object.
+     */
+    public static List<Long> getPageObjects(PDDocument document) throws IOException
+    {
+        COSDocument cos = document.getDocument();
+        Map<COSBase, Long> numbers = new IdentityHashMap<>();
+
+        for (COSObjectKey key: cos.getXrefTable().keySet()) {
+            COSBase object = cos.getObjectFromPool(key).getObject();
+
+            if (object instanceof COSDictionary) {
+                numbers.put(object, key.getNumber());
+            }
+        }
+
+        List<Long> pages = new ArrayList<>();
+
+        for (PDPage page: document.getPages()) {
+            Long number = numbers.get(page.getCOSObject());
+
+            pages.add(number == null ? -1L : number);
+        }
+
+        return pages;
+    }
+
+    /**
+     * A digest per page of the attributes it inherits from its parents, in page order.
+     *
+     * The page tree nodes are often rewritten by an update (eg. PDFBox writes the whole path to a changed page),
+     * this tells whether the values the pages inherit stayed the same.
+     */
+    public static List<String> getInheritedAttributes(PDDocument document) throws IOException
+    {
+        List<String> pages = new ArrayList<>();
+
+        for (PDPage page: document.getPages()) {
+            StringBuilder description = new StringBuilder();
+
+            for (COSDictionary node: getAncestors(page.getCOSObject())) {
+                for (COSName key: INHERITABLE) {
+                    description.append(key.getName()).append('=');
+                    describe(node.getItem(key), description, 0);
+                    description.append(';');
+                }
+
+                description.append('|');
+            }
+
+            pages.add(FileDigest.of(description.toString()).substring(0, 16));
+        }
+
+        return pages;
+    }
+
+    public boolean isPageAffected(PDPage page)
+    {
+        Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> stack = new ArrayDeque<>();
+        COSDictionary root = page.getCOSObject();
+
+        stack.push(root);
+
+        // Direct values of the parents are compared with getInheritedAttributes(), objects they refer to are walked
+        for (COSDictionary node: getAncestors(root)) {
+            for (COSName key: INHERITABLE) {
+                COSBase value = node.getItem(key);
+
+                if (value != null) {
+                    stack.push(value);
+                }
+            }
+        }
+
+        while (!stack.isEmpty()) {
+            COSBase base = stack.pop();
+
+            if (base instanceof COSObject) {
+                base = ((COSObject) base).getObject();
+            }
+
+            if (base == null || !visited.add(base)) {
+                continue;
+            }
+
+            // Other pages (eg. the target of a link) are checked on their own
+            if (base != root && base instanceof COSDictionary
+                && COSName.PAGE.equals(((COSDictionary) base).getCOSName(COSName.TYPE))) {
+                continue;
+            }
+
+            if (changed.contains(base)) {
+                return true;
+            }
+
+            if (base instanceof COSDictionary) {
+                COSDictionary dictionary = (COSDictionary) base;
+
+                for (Map.Entry<COSName, COSBase> entry: dictionary.entrySet()) {
+                    if (!COSName.PARENT.equals(entry.getKey()) && !COSName.P.equals(entry.getKey())) {
+                        stack.push(entry.getValue());
+                    }
+                }
+            } else if (base instanceof COSArray) {
+                for (COSBase item: (COSArray) base) {
+                    if (item != null) {
+                        stack.push(item);
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static List<COSDictionary> getAncestors(COSDictionary page)
+    {
+        List<COSDictionary> ancestors = new ArrayList<>();
+        Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        COSBase parent = page.getDictionaryObject(COSName.PARENT);
+
+        while (parent instanceof COSDictionary && visited.add(parent)) {
+            ancestors.add((COSDictionary) parent);
+
+            parent = ((COSDictionary) parent).getDictionaryObject(COSName.PARENT);
+        }
+
+        return ancestors;
+    }
+
+    /**
+     * Direct values are described in full, indirect objects by their object number.
+     */
+    private static void describe(COSBase value, StringBuilder description, int depth)
+    {
+        if (value instanceof COSObject) {
+            description.append(((COSObject) value).getObjectNumber()).append(" R");
+        } else if (value instanceof COSArray && depth < 8) {
+            description.append('[');
+
+            for (COSBase item: (COSArray) value) {
+                describe(item, description, depth + 1);
+                description.append(' ');
+            }
+
+            description.append(']');
+        } else if (value instanceof COSDictionary && depth < 8) {
+            description.append("<<");
+
+            for (Map.Entry<COSName, COSBase> entry: ((COSDictionary) value).entrySet()) {
+                description.append('/').append(entry.getKey().getName()).append(' ');
+                describe(entry.getValue(), description, depth + 1);
+                description.append(' ');
+            }
+
+            description.append(">>");
+        } else if (value instanceof COSNumber) {
+            description.append(((COSNumber) value).floatValue());
+        } else if (value instanceof COSName) {
+            description.append('/').append(((COSName) value).getName());
+        } else if (value instanceof COSString) {
+            description.append(((COSString) value).toHexString());
+        } else {
+            description.append(value);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.printmagus.preflight.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Primitive, allocation free loops over interleaved CMYK samples.
+ *
+ * The SWAR (SIMD within a register) loop reads 8 bytes - 2 pixels - at once and adds their components in
+ * 16 and 32 bit lanes of a long. The sums are integers, so the result is the same as the scalar loop.
+ */
+final public class InkDensityKernel
+{
+    private static final long BYTES = 0x00FF00FF00FF00FFL;
+    private static final long SHORTS = 0x0000FFFF0000FFFFL;
+
+    private InkDensityKernel()
+    {
+    }
+
+    /**
+     * Wraps a row for {@link #maxTotal(ByteBuffer, int)}, the buffer can be reused as long as the array is.
+     */
+    public static ByteBuffer wrap(byte[] samples)
+    {
+        return ByteBuffer.wrap(samples).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The maximum sum of the 4 components of a pixel, 0 - 1020, over the first length bytes.
+     */
+    public static int maxTotal(ByteBuffer samples, int length)
+    {
+        int max = 0;
+        int words = length / 8 * 8;
+
+        for (int i = 0; i < words; i += 8) {
+            long word = samples.getLong(i);
+
+            // 4 sums of 2 bytes in 16 bit lanes, then 2 sums of 4 bytes in 32 bit lanes
+            long pairs = (word & BYTES) + ((word >>> 8) & BYTES);
+            long totals = (pairs & SHORTS) + ((pairs >>> 16) & SHORTS);
+
+            int low = (int) (totals & 0xFFFF);
+            int high = (int) (totals >>> 32);
+
+            max = Math.max(max, Math.max(low, high));
+        }
+
+        return Math.max(max, maxTotal(samples.array(), words, length));
+    }
+
+    /**
+     * The scalar loop over the bytes [from, to).
+     */
+    public static int maxTotal(byte[] samples, int from, int to)
+    {
+        int max = 0;
+
+        for (int i = from; i + 4 <= to; i += 4) {
+            int total = (samples[i] & 0xff) + (samples[i + 1] & 0xff) + (samples[i + 2] & 0xff) + (samples[i + 3] & 0xff);
+
+            if (total > max) {
+                max = total;
+            }
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,154 @@
+package com.printmagus.preflight.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the ink coverage of CMYK samples: the maximum total coverage, the maximum of every channel
+ * and a histogram of the total coverage in percent (0 - 400).
+ *
+ * Without the statistics only the maximum total coverage is computed, with {@link InkDensityKernel},
+ * and the image is not read any further once every pixel could be full coverage.
+ */
+public class InkDensityReducer implements MergeableRowReducer
+{
+    private final boolean statistics;
+    private int width;
+    private int height;
+    private int numComponents;
+    private ByteBuffer view;
+    private int maxTotal = 0;
+    private int maxRow = -1;
+    private int[] maxChannels = new int[4];
+    private long[] histogram = new long[401];
+
+    public InkDensityReducer()
+    {
+        this(true);
+    }
+
+    public InkDensityReducer(boolean statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void begin(int width, int height, int numComponents)
+    {
+        this.width = width;
+        this.height = height;
+        this.numComponents = numComponents;
+        this.maxChannels = new int[numComponents];
+    }
+
+    @Override
+    public void row(int y, byte[] samples)
+    {
+        if (!statistics && numComponents == 4) {
+            if (view == null || view.array() != samples) {
+                view = InkDensityKernel.wrap(samples);
+            }
+
+            int rowTotal = InkDensityKernel.maxTotal(view, width * numComponents);
+
+            if (rowTotal > maxTotal || maxRow < 0) {
+                maxTotal = Math.max(maxTotal, rowTotal);
+                maxRow = y;
+            }
+
+            return;
+        }
+
+        int length = width * numComponents;
+
+        for (int i = 0; i + numComponents <= length; i += numComponents) {
+            int total = 0;
+
+            for (int c = 0; c < numComponents; c++) {
+                int value = samples[i + c] & 0xff;
+
+                if (value > maxChannels[c]) {
+                    maxChannels[c] = value;
+                }
+
+                total += value;
+            }
+
+            if (total > maxTotal || maxRow < 0) {
+                maxTotal = Math.max(maxTotal, total);
+                maxRow = y;
+            }
+
+            histogram[Math.min(400, total * 100 / 255)]++;
+        }
+    }
+
+    @Override
+    public MergeableRowReducer create()
+    {
+        InkDensityReducer part = new InkDensityReducer(statistics);
+
+        part.begin(width, height, numComponents);
+
+        return part;
+    }
+
+    @Override
+    public void merge(MergeableRowReducer other)
+    {
+        InkDensityReducer part = (InkDensityReducer) other;
+
+        // The parts are merged in row order, the first row with the maximum is kept
+        if (part.maxRow >= 0 && (part.maxTotal > maxTotal || maxRow < 0)) {
+            maxTotal = Math.max(maxTotal, part.maxTotal);
+            maxRow = part.maxRow;
+        }
+
+        for (int c = 0; c < maxChannels.length; c++) {
+            maxChannels[c] = Math.max(maxChannels[c], part.maxChannels[c]);
+        }
+
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += part.histogram[i];
+        }
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return !statistics && maxTotal == numComponents * 255;
+    }
+
+    /**
+     * The maximum total coverage in percent, the same as summing the samples of a Raster as floats.
+     */
+    public Float getMaxDensity()
+    {
+        Float max = (float) maxTotal;
+
+        return max / 255 * 100;
+    }
+
+    /**
+     * The first row with the maximum total coverage, -1 if no row was reduced.
+     */
+    public int getMaxRow()
+    {
+        return maxRow;
+    }
+
+    /**
+     * The maximum of every channel, 0 - 255, only computed with the statistics.
+     */
+    public int[] getMaxChannels()
+    {
+        return maxChannels;
+    }
+
+    /**
+     * The number of pixels for each total coverage percent, only computed with the statistics.
+     */
+    public long[] getHistogram()
+    {
+        return histogram;
+    }
+}
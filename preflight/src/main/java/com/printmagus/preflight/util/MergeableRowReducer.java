@@ -0,0 +1,17 @@
+package com.printmagus.preflight.util;
+
+/**
+ * A reducer whose result can be computed in parts, a band of rows each, see {@link BandedRasterReader}.
+ */
+public interface MergeableRowReducer extends RowReducer
+{
+    /**
+     * An empty reducer with the same settings, begin() was already called on it.
+     */
+    MergeableRowReducer create();
+
+    /**
+     * Adds the result of a part to this reducer.
+     */
+    void merge(MergeableRowReducer other);
+}
@@ -0,0 +1,134 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDAbstractPattern;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A resource cache which only lives as long as the page being validated.
+ *
+ * The default cache of PDFBox keeps the fonts, color spaces and XObjects of every page until the garbage
+ * collector needs the memory. This one is cleared after each page, so the decoded resources of a document
+ * never exceed the working set of a single page. XObject validators read it from other threads.
+ */
+public class PageResourceCache implements ResourceCache
+{
+    private final Map<COSObject, PDFont> fonts = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDColorSpace> colorSpaces = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDExtendedGraphicsState> extGStates = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDShading> shadings = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDAbstractPattern> patterns = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDPropertyList> properties = new ConcurrentHashMap<>();
+    private final Map<COSObject, PDXObject> xobjects = new ConcurrentHashMap<>();
+
+    public void clear()
+    {
+        fonts.clear();
+        colorSpaces.clear();
+        extGStates.clear();
+        shadings.clear();
+        patterns.clear();
+        properties.clear();
+        xobjects.clear();
+    }
+
+    @Override
+    public PDFont getFont(COSObject indirect)
+    {
+        return fonts.get(indirect);
+    }
+
+    @Override
+    public PDColorSpace getColorSpace(COSObject indirect)
+    {
+        return colorSpaces.get(indirect);
+    }
+
+    @Override
+    public PDExtendedGraphicsState getExtGState(COSObject indirect)
+    {
+        return extGStates.get(indirect);
+    }
+
+    @Override
+    public PDShading getShading(COSObject indirect)
+    {
+        return shadings.get(indirect);
+    }
+
+    @Override
+    public PDAbstractPattern getPattern(COSObject indirect)
+    {
+        return patterns.get(indirect);
+    }
+
+    @Override
+    public PDPropertyList getProperties(COSObject indirect)
+    {
+        return properties.get(indirect);
+    }
+
+    @Override
+    public PDXObject getXObject(COSObject indirect)
+    {
+        return xobjects.get(indirect);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDFont font)
+    {
+        put(fonts, indirect, font);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDColorSpace colorSpace)
+    {
+        put(colorSpaces, indirect, colorSpace);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDExtendedGraphicsState extGState)
+    {
+        put(extGStates, indirect, extGState);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDShading shading)
+    {
+        put(shadings, indirect, shading);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDAbstractPattern pattern)
+    {
+        put(patterns, indirect, pattern);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDPropertyList propertyList)
+    {
+        put(properties, indirect, propertyList);
+    }
+
+    @Override
+    public void put(COSObject indirect, PDXObject xobject)
+    {
+        put(xobjects, indirect, xobject);
+    }
+
+    private static <T> void put(Map<COSObject, T> map, COSObject indirect, T value)
+    {
+        if (indirect != null && value != null) {
+            map.put(indirect, value);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.printmagus.preflight.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Undoes the PNG predictors (10 - 15) of a Flate stream, row by row.
+ *
+ * Every row starts with its filter type (None, Sub, Up, Average, Paeth), which is applied with the previous row.
+ */
+class PngPredictorInputStream extends FilterInputStream
+{
+    private final int bytesPerPixel;
+    private final int rowLength;
+    private byte[] previous;
+    private byte[] current;
+    private int limit;
+    private int position;
+
+    PngPredictorInputStream(InputStream input, int colors, int bitsPerComponent, int columns)
+    {
+        super(input);
+
+        this.rowLength = (columns * colors * bitsPerComponent + 7) / 8;
+        this.bytesPerPixel = Math.max(1, colors * bitsPerComponent / 8);
+        this.previous = BufferPool.getDefault().borrow(rowLength);
+        this.current = BufferPool.getDefault().borrow(rowLength);
+        this.limit = rowLength;
+        this.position = rowLength;
+
+        // The row above the first one is 0
+        Arrays.fill(current, 0, rowLength, (byte) 0);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] single = new byte[1];
+
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (position == limit && !nextRow()) {
+            return -1;
+        }
+
+        int count = Math.min(length, limit - position);
+
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        byte[] buffer = new byte[4096];
+        long skipped = 0;
+
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+            if (read < 0) {
+                break;
+            }
+
+            skipped += read;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            super.close();
+        } finally {
+            if (current != null) {
+                BufferPool.getDefault().release(current);
+                BufferPool.getDefault().release(previous);
+                current = null;
+                previous = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    private boolean nextRow() throws IOException
+    {
+        int type = in.read();
+
+        if (type < 0) {
+            return false;
+        }
+
+        byte[] row = previous;
+        previous = current;
+        current = row;
+
+        int read = 0;
+        while (read < rowLength) {
+            int count = in.read(row, read, rowLength - read);
+
+            if (count < 0) {
+                break;
+            }
+
+            read += count;
+        }
+
+        if (read == 0) {
+            return false;
+        }
+
+        // A truncated last row, like PDFBox only the complete bytes are returned
+        unfilter(type, row, read, previous);
+        limit = read;
+        position = 0;
+
+        return true;
+    }
+
+    private void unfilter(int type, byte[] row, int length, byte[] above) throws IOException
+    {
+        for (int i = 0; i < length; i++) {
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xff : 0;
+            int up = above[i] & 0xff;
+            int upLeft = i >= bytesPerPixel ? above[i - bytesPerPixel] & 0xff : 0;
+            int value = row[i] & 0xff;
+
+            switch (type) {
+                case 0:
+                    break;
+                case 1:
+                    value += left;
+                    break;
+                case 2:
+                    value += up;
+                    break;
+                case 3:
+                    value += (left + up) >>> 1;
+                    break;
+                case 4:
+                    value += paeth(left, up, upLeft);
+                    break;
+                default:
+                    throw new IOException("Unknown PNG predictor: " + type);
+            }
+
+            row[i] = (byte) value;
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft)
+    {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+}
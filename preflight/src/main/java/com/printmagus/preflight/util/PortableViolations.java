@@ -0,0 +1,136 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.common.COSObjectable;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies violations with plain context values, so they can be kept after the document is closed.
+ *
+ * PD and COS objects are converted the same way as by the JSON serializer: dictionaries become maps, arrays
+ * become lists and names, strings and numbers their values. Images are dropped, and dictionaries are only
+ * followed 4 levels deep, page dictionaries would pull in the whole page tree.
+ */
+public class PortableViolations
+{
+    private static final int MAX_DEPTH = 4;
+
+    public static List<Violation> of(List<Violation> violations)
+    {
+        List<Violation> portable = new ArrayList<>(violations.size());
+
+        for (Violation violation: violations) {
+            portable.add(of(violation));
+        }
+
+        return portable;
+    }
+
+    public static Violation of(Violation violation)
+    {
+        if (violation.getContext() == null) {
+            return violation;
+        }
+
+        HashMap<String, Object> context = new HashMap<String, Object>();
+
+        for (Map.Entry<String, ?> entry: violation.getContext().entrySet()) {
+            context.put(entry.getKey(), simplify(entry.getValue(), 0));
+        }
+
+        return new Violation(violation.getRule(), violation.getMessage(), violation.getPage(), context);
+    }
+
+    private static Object simplify(Object value, int depth)
+    {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+
+        if (value instanceof PDImageXObject || depth > MAX_DEPTH) {
+            return null;
+        }
+
+        if (value instanceof COSObjectable && !(value instanceof COSBase)) {
+            return simplify(((COSObjectable) value).getCOSObject(), depth);
+        }
+
+        if (value instanceof COSObject) {
+            return simplify(((COSObject) value).getObject(), depth);
+        }
+
+        if (value instanceof COSName) {
+            return ((COSName) value).getName();
+        }
+
+        if (value instanceof COSString) {
+            return ((COSString) value).getString();
+        }
+
+        if (value instanceof COSBoolean) {
+            return ((COSBoolean) value).getValue();
+        }
+
+        if (value instanceof COSInteger) {
+            return ((COSInteger) value).intValue();
+        }
+
+        if (value instanceof COSNumber) {
+            return ((COSNumber) value).floatValue();
+        }
+
+        if (value instanceof COSNull) {
+            return null;
+        }
+
+        if (value instanceof COSArray) {
+            ArrayList<Object> list = new ArrayList<>();
+
+            for (COSBase item: (COSArray) value) {
+                list.add(simplify(item, depth + 1));
+            }
+
+            return list;
+        }
+
+        if (value instanceof COSDictionary) {
+            LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+
+            for (Map.Entry<COSName, COSBase> entry: ((COSDictionary) value).entrySet()) {
+                map.put(entry.getKey().getName(), simplify(entry.getValue(), depth + 1));
+            }
+
+            return map;
+        }
+
+        if (value instanceof Collection) {
+            ArrayList<Object> list = new ArrayList<>();
+
+            for (Object item: (Collection<?>) value) {
+                list.add(simplify(item, depth + 1));
+            }
+
+            return list;
+        }
+
+        if (value instanceof Map) {
+            LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), simplify(entry.getValue(), depth + 1));
+            }
+
+            return map;
+        }
+
+        return value.toString();
+    }
+}
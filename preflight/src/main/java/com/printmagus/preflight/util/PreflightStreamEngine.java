@@ -1,47 +1,97 @@
 package com.printmagus.preflight.util;
 
 import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.rule.ContentStreamHandler;
+import com.printmagus.preflight.rule.ContentStreamValidator;
 import com.printmagus.preflight.rule.XObjectValidator;
 import org.apache.pdfbox.contentstream.PDFStreamEngine;
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.color.*;
 import org.apache.pdfbox.contentstream.operator.state.*;
+import org.apache.pdfbox.contentstream.operator.text.*;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDTransparencyGroup;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * A special stream engine for image processing.
+ * The stream engine shared by every rule which needs the page contents.
+ *
+ * Each page is parsed only once, XObjects are passed to the XObjectValidators, every other event
+ * (operators, glyphs, color changes) is fanned out to the handlers of the ContentStreamValidators.
  */
 public class PreflightStreamEngine extends PDFStreamEngine
 {
+    private static final Set<String> COLOR_OPERATORS = new HashSet<>(
+        Arrays.asList("CS", "cs", "SC", "SCN", "sc", "scn", "G", "g", "RG", "rg", "K", "k")
+    );
+
     private List<XObjectValidator> xObjectValidators = new ArrayList<>();
-    private List<Violation> violations = new ArrayList<>();
+    private List<ContentStreamValidator> contentStreamValidators = new ArrayList<>();
+    private List<ContentStreamHandler> handlers = new ArrayList<>();
+    private List<Violation> handlerViolations = new ArrayList<>();
+    private ViolationSink sink = new ViolationSink();
+    private ValidationBudget budget = ValidationBudget.unlimited();
+    private ViolationPublisher publisher;
+    private boolean retainViolations = true;
+    private Deadline pageDeadline = Deadline.none();
+    private boolean pageTimedOut;
     private Integer maxImageArea = Integer.MAX_VALUE;
+    private Integer currentPageIndex;
+    private long operatorSequence;
 
     public void addValidator(XObjectValidator validator)
     {
         xObjectValidators.add(validator);
     }
 
+    public void addValidator(ContentStreamValidator validator)
+    {
+        // Text and color operators are only needed when someone listens to them
+        if (contentStreamValidators.isEmpty()) {
+            addContentOperators();
+        }
+
+        contentStreamValidators.add(validator);
+    }
+
+    public ViolationSink getSink()
+    {
+        return sink;
+    }
+
+    /**
+     * The retained violations of every processed page, ordered by page and by the operator which produced them.
+     */
     public List<Violation> getViolations()
     {
-        return violations;
+        return sink.getViolations();
     }
 
-    private ExecutorService executor;
+    private ValidatorExecutor executor;
+    private List<PendingValidation> pending = new ArrayList<>();
+    private XObjectCache cache = new XObjectCache();
+    private ImageAnalysisCache analysisCache;
 
     public PreflightStreamEngine() {
         addOperator(new Concatenate());
@@ -51,78 +101,476 @@ public class PreflightStreamEngine extends PDFStreamEngine
         addOperator(new SetMatrix());
     }
 
+    /**
+     * Creates an engine with the same validators and settings, but with its own state.
+     *
+     * PDFBox stream engines and COS objects are not thread safe, every worker thread needs its own copy.
+     */
+    public PreflightStreamEngine copy()
+    {
+        PreflightStreamEngine engine = new PreflightStreamEngine();
+
+        for (XObjectValidator validator: xObjectValidators) {
+            engine.addValidator(validator);
+        }
+
+        for (ContentStreamValidator validator: contentStreamValidators) {
+            engine.addValidator(validator);
+        }
+
+        engine.setMaxImageArea(maxImageArea);
+        engine.setImageAnalysisCache(analysisCache);
+        engine.setExecutor(executor);
+        engine.setBudget(budget);
+        engine.setPublisher(publisher);
+        engine.setRetainViolations(retainViolations);
+
+        return engine;
+    }
+
+    private void addContentOperators()
+    {
+        addOperator(new BeginText());
+        addOperator(new EndText());
+        addOperator(new NextLine());
+        addOperator(new SetCharSpacing());
+        addOperator(new MoveText());
+        addOperator(new MoveTextSetLeading());
+        addOperator(new SetFontAndSize());
+        addOperator(new ShowText());
+        addOperator(new ShowTextAdjusted());
+        addOperator(new SetTextLeading());
+        addOperator(new SetTextRenderingMode());
+        addOperator(new SetTextRise());
+        addOperator(new SetWordSpacing());
+        addOperator(new SetTextHorizontalScaling());
+        addOperator(new ShowTextLine());
+        addOperator(new ShowTextLineAndSpace());
+
+        addOperator(new SetStrokingColorSpace());
+        addOperator(new SetNonStrokingColorSpace());
+        addOperator(new SetStrokingDeviceCMYKColor());
+        addOperator(new SetNonStrokingDeviceCMYKColor());
+        addOperator(new SetNonStrokingDeviceRGBColor());
+        addOperator(new SetStrokingDeviceRGBColor());
+        addOperator(new SetNonStrokingDeviceGrayColor());
+        addOperator(new SetStrokingDeviceGrayColor());
+        addOperator(new SetStrokingColor());
+        addOperator(new SetStrokingColorN());
+        addOperator(new SetNonStrokingColor());
+        addOperator(new SetNonStrokingColorN());
+    }
+
     @Override
     public void processPage(PDPage page) throws IOException
     {
-        try {
-            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        processPage(page, null);
+    }
+
+    public void processPage(PDPage page, Integer pageIndex) throws IOException
+    {
+        currentPageIndex = pageIndex;
+        operatorSequence = 0;
+        pageDeadline = budget.createPageDeadline();
+        pageTimedOut = false;
+
+        for (ContentStreamValidator validator: contentStreamValidators) {
+            handlers.add(validator.createHandler(page, pageIndex, handlerViolations));
+        }
 
+        try {
             super.processPage(page);
 
-            executor.shutdown();
-            executor.awaitTermination(10, TimeUnit.MINUTES);
+            for (ContentStreamHandler handler: handlers) {
+                handler.endPage();
+            }
+        } catch (DeadlineExceededException e) {
+            pageTimedOut = true;
+
+            throw e;
+        } catch (ValidationCancelledException e) {
+            throw e;
+        } catch (IOException e) {
+            // Like the rules did with their own stream engines, the content stream rules report the exception
+            for (ContentStreamValidator validator: contentStreamValidators) {
+                Violation violation = validator.createExceptionViolation(pageIndex);
+
+                if (violation != null) {
+                    handlerViolations.add(violation);
+                }
+            }
+
+            throw e;
+        } finally {
+            collectHandlerViolations();
+            handlers.clear();
+            awaitPending();
+            sink.endPage();
+
+            if (pageTimedOut) {
+                budget.pageTimedOut(pageIndex);
+            }
+        }
+    }
+
+    /**
+     * Waits for the XObject validators submitted while processing the current page, and collects their violations.
+     *
+     * Once the budget is exhausted or the page deadline has passed, the remaining validators are cancelled.
+     */
+    private void awaitPending()
+    {
+        try {
+            for (PendingValidation validation: pending) {
+                Future<List<Violation>> future = validation.future;
+
+                while (!future.isDone()) {
+                    if (budget.isExhausted() || pageDeadline.isExpired()) {
+                        pageTimedOut |= pageDeadline.isExpired();
+                        future.cancel(true);
+
+                        break;
+                    }
+
+                    try {
+                        future.get(50, TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException | TimeoutException e) {
+                        // Done or still running, the result is collected below
+                    }
+                }
+
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        List<Violation> violations = future.get();
+
+                        if (validation.reused) {
+                            violations = relocate(violations, currentPageIndex);
+
+                            budget.record(violations);
+                        }
+
+                        sink.addAll(validation.sequence, validation.slot, violations);
+                    } catch (ExecutionException e) {
+                        // Timeouts were recorded by the validation itself
+                        if (!isCancellation(e.getCause())) {
+                            budget.ruleFailed(
+                                xObjectValidators.get(validation.slot).getClass().getSimpleName(),
+                                currentPageIndex
+                            );
+                        }
+                    }
+                }
+            }
         } catch (InterruptedException e) {
-            //
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Validators can not throw checked exceptions, a deadline or cancellation arrives wrapped.
+     */
+    private static boolean isCancellation(Throwable e)
+    {
+        while (e != null) {
+            if (e instanceof ValidationCancelledException) {
+                return true;
+            }
+
+            e = e.getCause();
+        }
+
+        return false;
+    }
+
+    /**
+     * The violations of a placement independent validator, repeated for another placement of the XObject.
+     */
+    private List<Violation> relocate(List<Violation> violations, Integer pageIndex)
+    {
+        List<Violation> relocated = new ArrayList<>(violations.size());
+
+        for (Violation violation: violations) {
+            relocated.add(new Violation(violation.getRule(), violation.getMessage(), pageIndex, violation.getContext()));
+        }
+
+        return relocated;
+    }
+
+    /**
+     * Handlers run on the parser thread, their violations are tagged with the current operator.
+     */
+    private void collectHandlerViolations()
+    {
+        if (!handlerViolations.isEmpty()) {
+            budget.record(handlerViolations);
+            sink.addAll(operatorSequence, -1, handlerViolations);
+            handlerViolations.clear();
         }
     }
 
     @Override
     protected void processOperator(Operator operator, List<COSBase> operands) throws IOException
     {
+        if (budget.isExhausted()) {
+            throw new ValidationCancelledException("Validation budget exhausted");
+        }
+
+        operatorSequence++;
+
+        // System.nanoTime() is cheap, but not free
+        if ((operatorSequence & 63) == 0) {
+            pageDeadline.check();
+        }
+
         if (operator.getName().equals("Do")) {
-            COSName objectName = (COSName)operands.get(0);
+            showXObject((COSName)operands.get(0));
+        } else {
+            super.processOperator(operator, operands);
+        }
 
-            COSDictionary dict = (COSDictionary) getResources().getCOSObject().getDictionaryObject(COSName.XOBJECT);
-            if (dict != null) {
-                COSBase object = dict.getDictionaryObject(objectName);
+        if (handlers.isEmpty()) {
+            return;
+        }
 
-                if (object instanceof COSDictionary) {
-                    COSDictionary dict2 = (COSDictionary) object;
+        for (ContentStreamHandler handler: handlers) {
+            handler.processOperator(operator, operands, getGraphicsState());
+        }
 
-                    if (dict2.getCOSName(COSName.SUBTYPE) == COSName.IMAGE) {
-                        Integer width = dict2.getInt(COSName.WIDTH);
-                        Integer height = dict2.getInt(COSName.HEIGHT);
+        if (COLOR_OPERATORS.contains(operator.getName())) {
+            for (ContentStreamHandler handler: handlers) {
+                handler.colorChanged(getGraphicsState());
+            }
+        }
 
-                        Integer area = width * height;
+        collectHandlerViolations();
+    }
 
-                        if (area > maxImageArea) {
-                            return;
-                        }
+    @Override
+    protected void showGlyph(
+        Matrix textRenderingMatrix,
+        PDFont font,
+        int code,
+        String unicode,
+        Vector displacement
+    ) throws IOException
+    {
+        super.showGlyph(textRenderingMatrix, font, code, unicode, displacement);
+
+        for (ContentStreamHandler handler: handlers) {
+            handler.showGlyph(textRenderingMatrix, font, code, unicode, displacement, getGraphicsState());
+        }
+    }
+
+    private void showXObject(COSName objectName) throws IOException
+    {
+        boolean oversized = false;
+
+        COSDictionary dict = (COSDictionary) getResources().getCOSObject().getDictionaryObject(COSName.XOBJECT);
+        if (dict != null) {
+            COSBase object = dict.getDictionaryObject(objectName);
+
+            if (object instanceof COSDictionary) {
+                COSDictionary dict2 = (COSDictionary) object;
+
+                if (dict2.getCOSName(COSName.SUBTYPE) == COSName.IMAGE) {
+                    Integer width = dict2.getInt(COSName.WIDTH);
+                    Integer height = dict2.getInt(COSName.HEIGHT);
+
+                    long area = (long) width * height;
+
+                    oversized = area > maxImageArea;
+
+                    if (oversized && !hasImageCostBoundedValidator()) {
+                        return;
                     }
                 }
             }
+        }
+
+        PDXObject xobject = getResources().getXObject(objectName);
+        PDPage page = getCurrentPage();
+        Integer pageIndex = currentPageIndex;
+        long sequence = operatorSequence;
+        Deadline outer = pageDeadline;
+        PDGraphicsState graphicsState = getGraphicsState().clone();
+        COSBase stream = xobject == null ? null : xobject.getCOSObject();
+        ImageInfo info = xobject instanceof PDImageXObject ? cache.getImageInfo((PDImageXObject) xobject) : null;
+
+        if (executor == null) {
+            executor = ValidatorExecutor.getDefault();
+        }
+
+        if (budget.isExhausted()) {
+            return;
+        }
+
+        for (int i = 0; i < xObjectValidators.size(); i++) {
+            XObjectValidator validator = xObjectValidators.get(i);
+            int slot = i;
+
+            if (oversized && !validator.isImageCostBounded()) {
+                continue;
+            }
 
-            PDXObject xobject = getResources().getXObject(objectName);
-            PDPage page = getCurrentPage();
-            PDGraphicsState graphicsState = getGraphicsState().clone();
+            if (validator.isPlacementIndependent() && stream != null) {
+                Future<List<Violation>> result = cache.getResult(stream, slot);
 
-            for (XObjectValidator validator: xObjectValidators) {
-                executor.submit(new Runnable()
+                // A cancelled result is validated again
+                if (result != null && !result.isCancelled()) {
+                    pending.add(new PendingValidation(result, sequence, slot, true));
+
+                    continue;
+                }
+            }
+
+            try {
+                Future<List<Violation>> future = executor.submit(validator, new Callable<List<Violation>>()
                 {
                     @Override
-                    public void run()
+                    public List<Violation> call()
                     {
-                        List<Violation> ruleV = validator.validate(objectName, xobject, page, graphicsState);
+                        Deadline deadline = budget.createRuleDeadline(outer);
+                        Deadline previous = Deadline.enter(deadline);
+
+                        try {
+                            List<Violation> ruleV = info != null
+                                ? validator.validateImage(objectName, (PDImageXObject) xobject, info, page, pageIndex, graphicsState)
+                                : validator.validate(objectName, xobject, page, pageIndex, graphicsState);
 
-                        if (!ruleV.isEmpty()) {
-                            violations.addAll(ruleV);
+                            // Counted right away, so a fail-fast rule can cancel the rest of the page
+                            budget.record(ruleV);
+
+                            return ruleV;
+                        } finally {
+                            Deadline.restore(previous);
+
+                            if (deadline.isExpired()) {
+                                budget.ruleTimedOut(validator.getClass().getSimpleName());
+                            }
                         }
                     }
                 });
+
+                pending.add(new PendingValidation(future, sequence, slot, false));
+
+                if (validator.isPlacementIndependent() && stream != null) {
+                    cache.putResult(stream, slot, future);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
             }
+        }
+
+        // Only the validators which bound their cost see an oversized image
+        if (oversized) {
+            return;
+        }
+
+        for (ContentStreamHandler handler: handlers) {
+            handler.showXObject(objectName, xobject, graphicsState);
+        }
 
-            if (xobject instanceof PDTransparencyGroup) {
-                showTransparencyGroup((PDTransparencyGroup) xobject);
-            } else if (xobject instanceof PDFormXObject) {
-                showForm((PDFormXObject) xobject);
+        if (xobject instanceof PDTransparencyGroup) {
+            showTransparencyGroup((PDTransparencyGroup) xobject);
+        } else if (xobject instanceof PDFormXObject) {
+            showForm((PDFormXObject) xobject);
+        }
+    }
+
+    private boolean hasImageCostBoundedValidator()
+    {
+        for (XObjectValidator validator: xObjectValidators) {
+            if (validator.isImageCostBounded()) {
+                return true;
             }
-        } else {
-            super.processOperator(operator, operands);
         }
+
+        return false;
+    }
+
+    public void setBudget(ValidationBudget budget)
+    {
+        this.budget = budget;
     }
 
+    /**
+     * Publishes the violations of each page as soon as the page has been processed.
+     */
+    public void setPublisher(ViolationPublisher publisher)
+    {
+        this.publisher = publisher;
+        this.sink.setPublisher(publisher);
+    }
+
+    public void setRetainViolations(boolean retainViolations)
+    {
+        this.retainViolations = retainViolations;
+        this.sink.setRetain(retainViolations);
+    }
+
+    public void setExecutor(ValidatorExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @deprecated see {@link #setMaxImageArea(Integer)}
+     */
+    @Deprecated
+    public Integer getMaxImageArea()
+    {
+        return maxImageArea;
+    }
+
+    /**
+     * Images with a larger area (in pixels) are skipped by every XObject validator, except the ones which bound
+     * the cost of large images themselves ({@link XObjectValidator#isImageCostBounded()}).
+     *
+     * This setting wins over the limits of the other rules: an image above it is not seen by them. A
+     * MaxInkDensityImage with a pixel budget samples it, as if the max area of the rule were this one.
+     *
+     * @deprecated the validators read images row by row, their heap use does not grow with the size of the image.
+     * Limit the images analysed by the rules instead, eg. with the max area of {@link
+     * com.printmagus.preflight.rule.MaxInkDensityImage}.
+     */
+    @Deprecated
     public void setMaxImageArea(Integer maxImageArea)
     {
         this.maxImageArea = maxImageArea;
     }
+
+    /**
+     * The persistent cache of image analysis results, null if there is none.
+     *
+     * XObject validators can look their results up here before decoding an image.
+     */
+    public ImageAnalysisCache getImageAnalysisCache()
+    {
+        return analysisCache;
+    }
+
+    public void setImageAnalysisCache(ImageAnalysisCache analysisCache)
+    {
+        this.analysisCache = analysisCache;
+    }
+
+    private static class PendingValidation
+    {
+        final Future<List<Violation>> future;
+        final long sequence;
+        final int slot;
+        final boolean reused;
+
+        PendingValidation(Future<List<Violation>> future, long sequence, int slot, boolean reused)
+        {
+            this.future = future;
+            this.sequence = sequence;
+            this.slot = slot;
+            this.reused = reused;
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package com.printmagus.preflight.util;
+
+/**
+ * Hands only the rows [from, to) to another reducer, the image is not read any further than the range.
+ */
+public class RowRangeReducer implements MergeableRowReducer
+{
+    private final MergeableRowReducer reducer;
+    private final int from;
+    private final int to;
+
+    public RowRangeReducer(MergeableRowReducer reducer, int from, int to)
+    {
+        this.reducer = reducer;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public void begin(int width, int height, int numComponents)
+    {
+        reducer.begin(width, height, numComponents);
+    }
+
+    @Override
+    public boolean isRowNeeded(int y)
+    {
+        return y >= from && y < to;
+    }
+
+    @Override
+    public boolean hasMoreRows(int y)
+    {
+        return y < to;
+    }
+
+    @Override
+    public void row(int y, byte[] samples)
+    {
+        if (isRowNeeded(y)) {
+            reducer.row(y, samples);
+        }
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return reducer.isDone();
+    }
+
+    @Override
+    public MergeableRowReducer create()
+    {
+        return new RowRangeReducer(reducer.create(), from, to);
+    }
+
+    @Override
+    public void merge(MergeableRowReducer other)
+    {
+        reducer.merge(((RowRangeReducer) other).reducer);
+    }
+}
@@ -0,0 +1,40 @@
+package com.printmagus.preflight.util;
+
+/**
+ * Receives the decoded samples of an image row by row, see {@link SampledRasterReader#read}.
+ */
+public interface RowReducer
+{
+    void begin(int width, int height, int numComponents);
+
+    /**
+     * The samples are interleaved, 8 bits per component. The array is reused for the next row, it may be longer
+     * than the row: only the first width * numComponents samples belong to it.
+     */
+    void row(int y, byte[] samples);
+
+    /**
+     * Rows which are not needed (eg. when sampling) are read from the image stream, but not unpacked.
+     */
+    default boolean isRowNeeded(int y)
+    {
+        return true;
+    }
+
+    /**
+     * False if neither this row nor any later one is needed (eg. past a range of rows), the image is not
+     * decoded any further.
+     */
+    default boolean hasMoreRows(int y)
+    {
+        return true;
+    }
+
+    /**
+     * The remaining rows are not decoded once the reducer has its result (eg. the maximum is reached).
+     */
+    default boolean isDone()
+    {
+        return false;
+    }
+}
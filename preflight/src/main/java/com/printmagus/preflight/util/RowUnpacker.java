@@ -0,0 +1,271 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unpacks the packed samples of an image row to 8 bits per component, interleaved.
+ *
+ * The conversion is the same as in PDFBox's SampledImageReader: 8-bit images without a decode array are
+ * copied, single component 1-bit images are expanded to 0 / 255, anything else is interpolated through the
+ * decode array. Rows are independent, so they can be unpacked on any thread.
+ *
+ * The interpolation is precomputed into a table per component, for every possible sample value. 1, 2 and 4
+ * bit samples are taken out of their byte with an expansion table, 16 bit samples index a table of 65536
+ * entries. The tables are built with the float arithmetic of the interpolation, so the samples are the same.
+ */
+final class RowUnpacker
+{
+    private static final int COPY = 0;
+    private static final int TABLE = 1;
+    private static final int ANY = 2;
+
+    // The sample values of every byte, for 1, 2 and 4 bits per sample
+    private static final byte[][] EXPAND = new byte[5][];
+
+    // Decode tables shared by images with the same bit depth and decode range
+    private static final Map<String, byte[]> TABLES = new ConcurrentHashMap<>();
+    private static final int MAX_TABLES = 256;
+
+    static {
+        for (int bits: new int[] {1, 2, 4}) {
+            int perByte = 8 / bits;
+            byte[] expand = new byte[256 * perByte];
+
+            for (int b = 0; b < 256; b++) {
+                for (int k = 0; k < perByte; k++) {
+                    expand[b * perByte + k] = (byte) ((b >> (8 - bits * (k + 1))) & ((1 << bits) - 1));
+                }
+            }
+
+            EXPAND[bits] = expand;
+        }
+    }
+
+    private final int mode;
+    private final int width;
+    private final int numComponents;
+    private final int bitsPerComponent;
+    private final float[] decode;
+    private final boolean isIndexed;
+    private final float sampleMax;
+    private final byte[][] tables;
+    private final boolean truncationAllowed;
+
+    private RowUnpacker(PDImage pdImage, COSArray colorKey) throws IOException
+    {
+        final PDColorSpace colorSpace = pdImage.getColorSpace();
+
+        this.width = pdImage.getWidth();
+        this.numComponents = colorSpace.getNumberOfComponents();
+        this.bitsPerComponent = pdImage.getBitsPerComponent();
+        this.decode = SampledRasterReader.getDecodeArray(pdImage);
+        this.isIndexed = colorSpace instanceof PDIndexed;
+        this.sampleMax = (float)Math.pow(2, bitsPerComponent) - 1f;
+        this.tables = new byte[numComponents][];
+
+        final float[] defaultDecode = colorSpace.getDefaultDecode(8);
+        if (bitsPerComponent == 8 && Arrays.equals(decode, defaultDecode) && colorKey == null) {
+            this.mode = COPY;
+            this.truncationAllowed = true;
+        } else if (bitsPerComponent == 1 && colorKey == null && numComponents == 1) {
+            // 0 / 255, also for indexed color spaces
+            boolean ascending = isIndexed || decode[0] < decode[1];
+
+            this.mode = TABLE;
+            this.truncationAllowed = true;
+            this.tables[0] = ascending ? new byte[] {0, (byte) 255} : new byte[] {(byte) 255, 0};
+        } else if (bitsPerComponent == 1 || bitsPerComponent == 2 || bitsPerComponent == 4
+            || bitsPerComponent == 8 || bitsPerComponent == 16) {
+            this.mode = TABLE;
+            this.truncationAllowed = false;
+
+            for (int c = 0; c < numComponents; c++) {
+                tables[c] = getTable(decode[c * 2], decode[c * 2 + 1]);
+            }
+        } else {
+            this.mode = ANY;
+            this.truncationAllowed = false;
+        }
+    }
+
+    /**
+     * The color key mask does not change the samples, only the choice of the conversion.
+     */
+    static RowUnpacker of(PDImage pdImage, COSArray colorKey) throws IOException
+    {
+        return new RowUnpacker(pdImage, colorKey);
+    }
+
+    /**
+     * The length of a packed row in bytes, rows are padded to the nearest byte.
+     */
+    int getPackedLength()
+    {
+        return (int) (((long) width * numComponents * bitsPerComponent + 7) / 8);
+    }
+
+    int getRowLength()
+    {
+        return width * numComponents;
+    }
+
+    /**
+     * True if the samples are copied as they are.
+     */
+    boolean isCopy()
+    {
+        return mode == COPY;
+    }
+
+    /**
+     * The fast paths accept a truncated last row, the general path fails on it (like ImageInputStream.readBits).
+     */
+    boolean isTruncationAllowed()
+    {
+        return truncationAllowed;
+    }
+
+    void unpack(byte[] packed, int offset, int length, byte[] row)
+    {
+        unpack(packed, offset, length, row, 0);
+    }
+
+    /**
+     * Unpacks the packed row at the offset, of which only length bytes are available, into the output starting
+     * at the output offset. Missing samples are 0.
+     */
+    void unpack(byte[] packed, int offset, int length, byte[] output, int outputOffset)
+    {
+        int rowLength = getRowLength();
+
+        switch (mode) {
+            case COPY:
+                System.arraycopy(packed, offset, output, outputOffset, length);
+                Arrays.fill(output, outputOffset + length, outputOffset + rowLength, (byte) 0);
+                break;
+            case TABLE:
+                if (bitsPerComponent == 8) {
+                    unpack8(packed, offset, output, outputOffset, rowLength);
+                } else if (bitsPerComponent == 16) {
+                    unpack16(packed, offset, output, outputOffset, rowLength);
+                } else {
+                    unpackSmall(packed, offset, length, output, outputOffset, rowLength);
+                }
+                break;
+            default:
+                unpackAny(packed, offset, output, outputOffset);
+        }
+    }
+
+    private void unpackSmall(byte[] packed, int offset, int length, byte[] output, int outputOffset, int rowLength)
+    {
+        final byte[] expand = EXPAND[bitsPerComponent];
+        final int perByte = 8 / bitsPerComponent;
+        int i = 0;
+        int c = 0;
+
+        for (int r = 0; r < length && i < rowLength; r++) {
+            int base = (packed[offset + r] & 0xff) * perByte;
+
+            for (int k = 0; k < perByte && i < rowLength; k++, i++) {
+                output[outputOffset + i] = tables[c][expand[base + k]];
+
+                if (++c == numComponents) {
+                    c = 0;
+                }
+            }
+        }
+
+        Arrays.fill(output, outputOffset + i, outputOffset + rowLength, (byte) 0);
+    }
+
+    private void unpack8(byte[] packed, int offset, byte[] output, int outputOffset, int rowLength)
+    {
+        for (int i = 0; i < rowLength; i += numComponents) {
+            for (int c = 0; c < numComponents; c++) {
+                output[outputOffset + i + c] = tables[c][packed[offset + i + c] & 0xff];
+            }
+        }
+    }
+
+    private void unpack16(byte[] packed, int offset, byte[] output, int outputOffset, int rowLength)
+    {
+        for (int i = 0, p = offset; i < rowLength; i += numComponents) {
+            for (int c = 0; c < numComponents; c++, p += 2) {
+                output[outputOffset + i + c] = tables[c][((packed[p] & 0xff) << 8) | (packed[p + 1] & 0xff)];
+            }
+        }
+    }
+
+    private void unpackAny(byte[] packed, int offset, byte[] output, int outputOffset)
+    {
+        long bit = (long) offset * 8;
+
+        for (int x = 0, i = outputOffset; x < width; x++) {
+            for (int c = 0; c < numComponents; c++, i++, bit += bitsPerComponent) {
+                output[i] = interpolate(readBits(packed, bit, bitsPerComponent), decode[c * 2], decode[(c * 2) + 1]);
+            }
+        }
+    }
+
+    private byte[] getTable(float dMin, float dMax)
+    {
+        String key = bitsPerComponent + ":" + dMin + ":" + dMax + ":" + isIndexed;
+        byte[] table = TABLES.get(key);
+
+        if (table == null) {
+            table = new byte[1 << bitsPerComponent];
+
+            for (int value = 0; value < table.length; value++) {
+                table[value] = interpolate(value, dMin, dMax);
+            }
+
+            if (TABLES.size() < MAX_TABLES) {
+                TABLES.put(key, table);
+            }
+        }
+
+        return table;
+    }
+
+    private byte interpolate(int value, float dMin, float dMax)
+    {
+        // interpolate to domain
+        float output = dMin + (value * ((dMax - dMin) / sampleMax));
+
+        if (isIndexed) {
+            // indexed color spaces get the raw value, because the TYPE_BYTE
+            // below cannot be reversed by the color space without it having
+            // knowledge of the number of bits per component
+            return (byte)Math.round(output);
+        }
+
+        // interpolate to TYPE_BYTE
+        int outputByte = Math.round(((output - Math.min(dMin, dMax)) /
+            Math.abs(dMax - dMin)) * 255f);
+
+        return (byte)outputByte;
+    }
+
+    /**
+     * Reads the bits most significant first, like ImageInputStream.readBits().
+     */
+    private static int readBits(byte[] data, long bit, int bits)
+    {
+        int value = 0;
+
+        for (int b = 0; b < bits; b++, bit++) {
+            value = (value << 1) | ((data[(int) (bit >>> 3)] >> (7 - (int) (bit & 7))) & 1);
+        }
+
+        return value;
+    }
+}
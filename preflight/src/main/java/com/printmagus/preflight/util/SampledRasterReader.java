@@ -1,24 +1,17 @@
 package com.printmagus.preflight.util;
 
-import java.awt.Graphics2D;
-import java.awt.Paint;
 import java.awt.Point;
-import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSNumber;
 import org.apache.pdfbox.io.IOUtils;
-import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
-import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 
 /**
@@ -28,6 +21,8 @@ import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
  */
 final public class SampledRasterReader
 {
+    private static final int BLOCK_SIZE = 256 * 1024;
+
     private SampledRasterReader()
     {
     }
@@ -49,24 +44,16 @@ final public class SampledRasterReader
         }
 
         // get parameters, they must be valid or have been repaired
-        final PDColorSpace colorSpace = pdImage.getColorSpace();
-        final int numComponents = colorSpace.getNumberOfComponents();
+        final int numComponents = pdImage.getColorSpace().getNumberOfComponents();
         final int width = pdImage.getWidth();
         final int height = pdImage.getHeight();
-        final int bitsPerComponent = pdImage.getBitsPerComponent();
-        final float[] decode = getDecodeArray(pdImage);
 
         if (width <= 0 || height <= 0) {
             throw new IOException("image weight and height must be positive");
         }
 
-        //
-        // An AWT raster must use 8/16/32 bits per component. Images with < 8bpc
-        // will be unpacked into a byte-backed raster. Images with 16bpc will be reduced
-        // in depth to 8bpc as they will be drawn to TYPE_INT_RGB images anyway. All code
-        // in PDColorSpace#toRGBImage expects and 8-bit range, i.e. 0-255.
-        //
-        WritableRaster raster = Raster.createBandedRaster(
+        // pixel interleaved, every row is unpacked straight into the data buffer
+        WritableRaster raster = Raster.createInterleavedRaster(
             DataBuffer.TYPE_BYTE,
             width,
             height,
@@ -74,196 +61,172 @@ final public class SampledRasterReader
             new Point(0, 0)
         );
 
+        //
+        // An AWT raster must use 8/16/32 bits per component. Images with < 8bpc
+        // will be unpacked into a byte-backed raster. Images with 16bpc will be reduced
+        // in depth to 8bpc as they will be drawn to TYPE_INT_RGB images anyway. All code
+        // in PDColorSpace#toRGBImage expects and 8-bit range, i.e. 0-255.
+        //
+        RowUnpacker unpacker = RowUnpacker.of(pdImage, colorKey);
+
         // convert image, faster path for non-decoded, non-colormasked 8-bit images
-        final float[] defaultDecode = pdImage.getColorSpace().getDefaultDecode(8);
-        if (bitsPerComponent == 8 && Arrays.equals(decode, defaultDecode) && colorKey == null) {
+        if (unpacker.isCopy()) {
             from8bit(pdImage, raster);
         } else {
-            if (bitsPerComponent == 1 && colorKey == null) {
-                from1Bit(pdImage, raster);
-            } else {
-                fromAny(pdImage, raster, colorKey);
-            }
+            fromPacked(pdImage, raster, unpacker);
         }
 
         return raster;
     }
 
-    private static void from1Bit(PDImage pdImage, WritableRaster raster)
-        throws IOException
+    /**
+     * Decodes the image row by row and hands every row to the reducer, instead of building a Raster.
+     *
+     * The rows hold the same samples as the Raster returned by getRaster(), interleaved. Only a single row is
+     * kept in memory, so the size of the image does not matter, and it is borrowed from the {@link BufferPool}.
+     * A truncated image stream ends with its last, partial row (padded with zeros).
+     *
+     * @param pdImage  the image to read
+     * @param colorKey an optional color key mask
+     * @param reducer  receives the rows
+     * @throws IOException if the image cannot be read
+     */
+    public static void read(PDImage pdImage, COSArray colorKey, RowReducer reducer) throws IOException
     {
-        final PDColorSpace colorSpace = pdImage.getColorSpace();
+        if (pdImage.isEmpty()) {
+            throw new IOException("Image stream is empty");
+        }
+
+        final int numComponents = pdImage.getColorSpace().getNumberOfComponents();
         final int width = pdImage.getWidth();
         final int height = pdImage.getHeight();
-        final float[] decode = getDecodeArray(pdImage);
-        byte[] output = ((DataBufferByte)raster.getDataBuffer()).getData();
 
-        // read bit stream
-        InputStream iis = null;
-        try {
-            // create stream
-            iis = pdImage.createInputStream();
-            final boolean isIndexed = colorSpace instanceof PDIndexed;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("image weight and height must be positive");
+        }
 
-            int rowLen = width / 8;
-            if (width % 8 > 0) {
-                rowLen++;
-            }
+        reducer.begin(width, height, numComponents);
 
-            // read stream
-            byte value0;
-            byte value1;
-            if (isIndexed || decode[0] < decode[1]) {
-                value0 = 0;
-                value1 = (byte)255;
-            } else {
-                value0 = (byte)255;
-                value1 = 0;
-            }
-            byte[] buff = new byte[rowLen];
-            int idx = 0;
+        RowUnpacker unpacker = RowUnpacker.of(pdImage, colorKey);
+        final int packedLength = unpacker.getPackedLength();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] packed = pool.borrow(packedLength);
+        byte[] row = pool.borrow(unpacker.getRowLength());
+
+        InputStream input = pdImage.createInputStream();
+        try {
+            Deadline deadline = Deadline.current();
             for (int y = 0; y < height; y++) {
-                int x = 0;
-                int readLen = iis.read(buff);
-                for (int r = 0; r < rowLen && r < readLen; r++) {
-                    int value = buff[r];
-                    int mask = 128;
-                    for (int i = 0; i < 8; i++) {
-                        int bit = value & mask;
-                        mask >>= 1;
-                        output[idx++] = bit == 0 ? value0 : value1;
-                        x++;
-                        if (x == width) {
-                            break;
-                        }
-                    }
+                deadline.check();
+                if (reducer.isDone() || !reducer.hasMoreRows(y)) {
+                    break;
                 }
-                if (readLen != rowLen) {
+                int readLen = readRow(input, packed, 0, packedLength);
+                if (readLen != packedLength && !unpacker.isTruncationAllowed()) {
+                    throw new EOFException();
+                }
+                if (reducer.isRowNeeded(y)) {
+                    unpacker.unpack(packed, 0, readLen, row);
+                    reducer.row(y, row);
+                }
+                if (readLen != packedLength) {
                     break;
                 }
             }
         } finally {
-            if (iis != null) {
-                iis.close();
+            IOUtils.closeQuietly(input);
+            pool.release(packed);
+            pool.release(row);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends, returns the number of bytes read.
+     */
+    static int readRow(InputStream input, byte[] buffer) throws IOException
+    {
+        return readRow(input, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Reads until length bytes are read or the stream ends, returns the number of bytes read.
+     */
+    static int readRow(InputStream input, byte[] buffer, int from, int length) throws IOException
+    {
+        int offset = 0;
+
+        while (offset < length) {
+            int read = input.read(buffer, from + offset, length - offset);
+
+            if (read < 0) {
+                break;
             }
+
+            offset += read;
         }
+
+        return offset;
     }
 
-    // faster, 8-bit non-decoded, non-colormasked image conversion
-    private static void from8bit(PDImage pdImage, WritableRaster raster)
+    // the other images are unpacked row by row, a short stream leaves the remaining samples 0 if the
+    // unpacker allows a truncated image, otherwise it fails like ImageInputStream.readBits()
+    private static void fromPacked(PDImage pdImage, WritableRaster raster, RowUnpacker unpacker)
         throws IOException
     {
+        final int packedLength = unpacker.getPackedLength();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] packed = pool.borrow(packedLength);
+
         InputStream input = pdImage.createInputStream();
         try {
-            // get the raster's underlying byte buffer
-            byte[][] banks = ((DataBufferByte)raster.getDataBuffer()).getBankData();
-            final int width = pdImage.getWidth();
+            byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+            final int rowLength = unpacker.getRowLength();
             final int height = pdImage.getHeight();
-            final int numComponents = pdImage.getColorSpace()
-                                             .getNumberOfComponents();
-            int max = width * height;
-            byte[] tempBytes = new byte[numComponents];
-            for (int i = 0; i < max; i++) {
-                input.read(tempBytes);
-                for (int c = 0; c < numComponents; c++) {
-                    banks[c][i] = tempBytes[0 + c];
+            Deadline deadline = Deadline.current();
+            for (int y = 0; y < height; y++) {
+                deadline.check();
+                int readLen = readRow(input, packed, 0, packedLength);
+                if (readLen != packedLength && !unpacker.isTruncationAllowed()) {
+                    throw new EOFException();
+                }
+                unpacker.unpack(packed, 0, readLen, data, y * rowLength);
+                if (readLen != packedLength) {
+                    break;
                 }
             }
         } finally {
             IOUtils.closeQuietly(input);
+            pool.release(packed);
         }
     }
 
-    // slower, general-purpose image conversion from any image format
-    private static void fromAny(PDImage pdImage, WritableRaster raster, COSArray colorKey)
+    // faster, 8-bit non-decoded, non-colormasked image conversion
+    // the stream is read in blocks of rows straight into the pixel interleaved raster, a short
+    // stream leaves the remaining samples 0
+    private static void from8bit(PDImage pdImage, WritableRaster raster)
         throws IOException
     {
-        final PDColorSpace colorSpace = pdImage.getColorSpace();
-        final int numComponents = colorSpace.getNumberOfComponents();
-        final int width = pdImage.getWidth();
-        final int height = pdImage.getHeight();
-        final int bitsPerComponent = pdImage.getBitsPerComponent();
-        final float[] decode = getDecodeArray(pdImage);
-
-        // read bit stream
-        ImageInputStream iis = null;
+        InputStream input = pdImage.createInputStream();
         try {
-            // create stream
-            iis = new MemoryCacheImageInputStream(pdImage.createInputStream());
-            final float sampleMax = (float)Math.pow(2, bitsPerComponent) - 1f;
-            final boolean isIndexed = colorSpace instanceof PDIndexed;
-
-            // init color key mask
-            float[] colorKeyRanges = null;
-            BufferedImage colorKeyMask = null;
-            if (colorKey != null) {
-                colorKeyRanges = colorKey.toFloatArray();
-                colorKeyMask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-            }
-
-            // calculate row padding
-            int padding = 0;
-            if (width * numComponents * bitsPerComponent % 8 > 0) {
-                padding = 8 - (width * numComponents * bitsPerComponent % 8);
-            }
-
-            // read stream
-            byte[] srcColorValues = new byte[numComponents];
-            byte[] alpha = new byte[1];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    boolean isMasked = true;
-                    for (int c = 0; c < numComponents; c++) {
-                        int value = (int)iis.readBits(bitsPerComponent);
-
-                        // color key mask requires values before they are decoded
-                        if (colorKeyRanges != null) {
-                            isMasked &= value >= colorKeyRanges[c * 2] &&
-                                value <= colorKeyRanges[c * 2 + 1];
-                        }
-
-                        // decode array
-                        final float dMin = decode[c * 2];
-                        final float dMax = decode[(c * 2) + 1];
-
-                        // interpolate to domain
-                        float output = dMin + (value * ((dMax - dMin) / sampleMax));
-
-                        if (isIndexed) {
-                            // indexed color spaces get the raw value, because the TYPE_BYTE
-                            // below cannot be reversed by the color space without it having
-                            // knowledge of the number of bits per component
-                            srcColorValues[c] = (byte)Math.round(output);
-                        } else {
-                            // interpolate to TYPE_BYTE
-                            int outputByte = Math.round(((output - Math.min(dMin, dMax)) /
-                                Math.abs(dMax - dMin)) * 255f);
-
-                            srcColorValues[c] = (byte)outputByte;
-                        }
-                    }
-                    raster.setDataElements(x, y, srcColorValues);
-
-                    // set alpha channel in color key mask, if any
-                    if (colorKeyMask != null) {
-                        alpha[0] = (byte)(isMasked ? 255 : 0);
-                        colorKeyMask.getRaster()
-                                    .setDataElements(x, y, alpha);
-                    }
+            byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+            final int rowLength = pdImage.getWidth() * pdImage.getColorSpace().getNumberOfComponents();
+            final int height = pdImage.getHeight();
+            final int blockRows = Math.max(1, BLOCK_SIZE / rowLength);
+            Deadline deadline = Deadline.current();
+            for (int y = 0; y < height; y += blockRows) {
+                deadline.check();
+                int length = Math.min(blockRows, height - y) * rowLength;
+                if (readRow(input, data, y * rowLength, length) != length) {
+                    break;
                 }
-
-                // rows are padded to the nearest byte
-                iis.readBits(padding);
             }
         } finally {
-            if (iis != null) {
-                iis.close();
-            }
+            IOUtils.closeQuietly(input);
         }
     }
 
     // gets decode array from dictionary or returns default
-    private static float[] getDecodeArray(PDImage pdImage) throws IOException
+    static float[] getDecodeArray(PDImage pdImage) throws IOException
     {
         final COSArray cosDecode = pdImage.getDecode();
         float[] decode = null;
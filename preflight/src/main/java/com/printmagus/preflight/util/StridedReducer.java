@@ -0,0 +1,103 @@
+package com.printmagus.preflight.util;
+
+/**
+ * Hands every k-th pixel of every k-th row to another reducer, which sees an image of (width / k) x (height / k)
+ * pixels (rounded up). Sample row y of the other reducer stands for the rows [y * k, y * k + k) of the image.
+ *
+ * The other rows are not unpacked, so the cost of the analysis falls with the square of k.
+ */
+public class StridedReducer implements MergeableRowReducer
+{
+    private final MergeableRowReducer reducer;
+    private final int stride;
+    private int width;
+    private int numComponents;
+    private byte[] samples;
+
+    public StridedReducer(MergeableRowReducer reducer, int stride)
+    {
+        this.reducer = reducer;
+        this.stride = stride;
+    }
+
+    /**
+     * The smallest stride which brings the area down to the budget (in pixels), at least 1.
+     */
+    public static int getStride(long area, long budget)
+    {
+        int stride = (int) Math.max(1, Math.ceil(Math.sqrt((double) area / Math.max(1, budget))));
+
+        // Rounding of the square root
+        while ((long) stride * stride * Math.max(1, budget) < area) {
+            stride++;
+        }
+
+        return stride;
+    }
+
+    @Override
+    public void begin(int width, int height, int numComponents)
+    {
+        this.width = width;
+        this.numComponents = numComponents;
+        this.samples = new byte[sampled(width) * numComponents];
+
+        reducer.begin(sampled(width), sampled(height), numComponents);
+    }
+
+    @Override
+    public boolean isRowNeeded(int y)
+    {
+        return y % stride == 0;
+    }
+
+    @Override
+    public void row(int y, byte[] samples)
+    {
+        if (y % stride != 0) {
+            return;
+        }
+
+        for (int x = 0, i = 0; x < width; x += stride) {
+            for (int c = 0; c < numComponents; c++, i++) {
+                this.samples[i] = samples[x * numComponents + c];
+            }
+        }
+
+        reducer.row(y / stride, this.samples);
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return reducer.isDone();
+    }
+
+    @Override
+    public MergeableRowReducer create()
+    {
+        StridedReducer part = new StridedReducer(reducer.create(), stride);
+
+        part.width = width;
+        part.numComponents = numComponents;
+        part.samples = new byte[samples.length];
+
+        return part;
+    }
+
+    @Override
+    public void merge(MergeableRowReducer other)
+    {
+        reducer.merge(((StridedReducer) other).reducer);
+    }
+
+    public int getStride()
+    {
+        return stride;
+    }
+
+    private int sampled(int length)
+    {
+        return (length + stride - 1) / stride;
+    }
+}
@@ -0,0 +1,193 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides when a validation should stop early.
+ *
+ * The budget is exhausted when the maximum number of violations is reached, when any of the fail-fast
+ * rules reports a violation, when the deadline of the whole validation has passed or when it is cancelled. It is shared by
+ * every thread of a validation, the scheduler and the stream engines check it between pages and operators.
+ *
+ * Pages and rules which ran out of time or failed are recorded, so the result can tell what was not fully
+ * validated.
+ */
+public class ValidationBudget
+{
+    private final int maxViolations;
+    private final Set<String> failFastRules;
+    private final AtomicInteger violations = new AtomicInteger();
+    private volatile boolean exhausted = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean timedOut = false;
+
+    private Deadline deadline = Deadline.none();
+    private Long pageTimeout;
+    private Long ruleTimeout;
+    private final Set<Integer> timedOutPages = new ConcurrentSkipListSet<>();
+    private final Set<String> timedOutRules = new ConcurrentSkipListSet<>();
+    private final Set<Integer> failedPages = new ConcurrentSkipListSet<>();
+    private final Set<String> failedRules = new ConcurrentSkipListSet<>();
+
+    public ValidationBudget(int maxViolations, Collection<String> failFastRules)
+    {
+        this.maxViolations = maxViolations;
+        this.failFastRules = new HashSet<>(failFastRules);
+    }
+
+    public static ValidationBudget unlimited()
+    {
+        return new ValidationBudget(Integer.MAX_VALUE, Collections.emptySet());
+    }
+
+    public void record(Violation violation)
+    {
+        if (violations.incrementAndGet() >= maxViolations || failFastRules.contains(violation.getRule())) {
+            exhausted = true;
+        }
+    }
+
+    public void record(List<Violation> violations)
+    {
+        for (Violation violation: violations) {
+            record(violation);
+        }
+    }
+
+    public boolean isExhausted()
+    {
+        return exhausted || cancelled || deadline.isExpired();
+    }
+
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * True if the validation stopped on the violation limit, a fail-fast rule or a cancel, not on its deadline.
+     */
+    public boolean isStopped()
+    {
+        return exhausted || cancelled;
+    }
+
+    /**
+     * The deadline of the whole validation, starts counting immediately.
+     */
+    public void setTimeout(Long millis)
+    {
+        this.deadline = Deadline.after(millis);
+    }
+
+    public void setPageTimeout(Long millis)
+    {
+        this.pageTimeout = millis;
+    }
+
+    public void setRuleTimeout(Long millis)
+    {
+        this.ruleTimeout = millis;
+    }
+
+    /**
+     * True once the deadline of the whole validation has passed, whether or not anything was cut short by it.
+     */
+    public boolean isTimedOut()
+    {
+        return deadline.isExpired();
+    }
+
+    /**
+     * True if a page or rule was cut short while the deadline of the whole validation had passed. A validation
+     * which finished its work just before the deadline has not timed out, even if the result is built after it.
+     */
+    public boolean hasTimedOut()
+    {
+        return timedOut;
+    }
+
+    public Deadline getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * A new page deadline, starting now, never later than the deadline of the validation.
+     */
+    public Deadline createPageDeadline()
+    {
+        return Deadline.after(pageTimeout).earliest(deadline);
+    }
+
+    /**
+     * A new rule deadline, starting now, never later than the given (page or validation) deadline.
+     */
+    public Deadline createRuleDeadline(Deadline outer)
+    {
+        return Deadline.after(ruleTimeout).earliest(outer);
+    }
+
+    public void pageTimedOut(Integer pageIndex)
+    {
+        timedOutPages.add(pageIndex == null ? -1 : pageIndex);
+        timedOut |= deadline.isExpired();
+    }
+
+    public void ruleTimedOut(String rule)
+    {
+        timedOutRules.add(rule);
+        timedOut |= deadline.isExpired();
+    }
+
+    public void pageFailed(Integer pageIndex)
+    {
+        failedPages.add(pageIndex == null ? -1 : pageIndex);
+    }
+
+    /**
+     * The rule failed with an error on the page, null if it did not run on a page.
+     */
+    public void ruleFailed(String rule, Integer pageIndex)
+    {
+        failedRules.add(rule);
+
+        if (pageIndex != null) {
+            pageFailed(pageIndex);
+        }
+    }
+
+    public List<Integer> getTimedOutPages()
+    {
+        return new ArrayList<>(timedOutPages);
+    }
+
+    public List<String> getTimedOutRules()
+    {
+        return new ArrayList<>(timedOutRules);
+    }
+
+    public List<Integer> getFailedPages()
+    {
+        return new ArrayList<>(failedPages);
+    }
+
+    public List<String> getFailedRules()
+    {
+        return new ArrayList<>(failedRules);
+    }
+}
@@ -0,0 +1,16 @@
+package com.printmagus.preflight.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown from inside the stream engine to stop processing the current page.
+ */
+public class ValidationCancelledException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public ValidationCancelledException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,114 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.rule.XObjectValidator;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived executor for the XObject validators.
+ *
+ * Heavy validators (raster decoding) and light validators (metadata only) run in separate bulkheads,
+ * so a huge image can not starve the cheap checks. Both bulkheads are bounded, if the queue is full the
+ * submitting thread - the content stream parser - blocks until a slot is free.
+ */
+public class ValidatorExecutor
+{
+    private static ValidatorExecutor defaultExecutor;
+
+    private final Bulkhead light;
+    private final Bulkhead heavy;
+
+    public ValidatorExecutor()
+    {
+        this(
+            Runtime.getRuntime().availableProcessors(),
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            64
+        );
+    }
+
+    public ValidatorExecutor(int lightThreads, int heavyThreads, int queueCapacity)
+    {
+        this.light = new Bulkhead("preflight-light", lightThreads, queueCapacity);
+        this.heavy = new Bulkhead("preflight-heavy", heavyThreads, queueCapacity);
+    }
+
+    /**
+     * The shared executor used by stream engines which were not given one explicitly.
+     */
+    public static synchronized ValidatorExecutor getDefault()
+    {
+        if (defaultExecutor == null) {
+            defaultExecutor = new ValidatorExecutor();
+        }
+
+        return defaultExecutor;
+    }
+
+    /**
+     * Blocks while the bulkhead of the validator is full.
+     */
+    public <T> Future<T> submit(XObjectValidator validator, Callable<T> task) throws InterruptedException
+    {
+        return validator.isHeavy() ? heavy.submit(task) : light.submit(task);
+    }
+
+    public void shutdown()
+    {
+        light.executor.shutdown();
+        heavy.executor.shutdown();
+    }
+
+    private static class Bulkhead
+    {
+        private final ThreadPoolExecutor executor;
+        private final Semaphore slots;
+
+        Bulkhead(String name, int threads, int queueCapacity)
+        {
+            AtomicInteger counter = new AtomicInteger();
+
+            this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            );
+            this.executor.allowCoreThreadTimeOut(true);
+            this.slots = new Semaphore(threads + queueCapacity);
+        }
+
+        <T> Future<T> submit(Callable<T> task) throws InterruptedException
+        {
+            slots.acquire();
+
+            // done() is called when the task completes or gets cancelled, even before it started
+            FutureTask<T> future = new FutureTask<T>(task)
+            {
+                @Override
+                protected void done()
+                {
+                    slots.release();
+                }
+            };
+
+            try {
+                executor.execute(future);
+            } catch (RejectedExecutionException e) {
+                future.cancel(false);
+
+                throw e;
+            }
+
+            return future;
+        }
+    }
+}
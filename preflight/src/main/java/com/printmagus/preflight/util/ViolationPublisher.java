@@ -0,0 +1,40 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+import com.printmagus.preflight.ViolationListener;
+
+import java.util.List;
+
+/**
+ * Delivers violations to a listener, one call at a time, and cancels the validation when asked to.
+ */
+public class ViolationPublisher
+{
+    private final ViolationListener listener;
+    private final ValidationBudget budget;
+
+    public ViolationPublisher(ViolationListener listener, ValidationBudget budget)
+    {
+        this.listener = listener;
+        this.budget = budget;
+    }
+
+    public void publish(List<Violation> violations)
+    {
+        if (violations.isEmpty()) {
+            return;
+        }
+
+        synchronized (listener) {
+            for (Violation violation: violations) {
+                if (budget.isCancelled()) {
+                    return;
+                }
+
+                if (!listener.onViolation(violation)) {
+                    budget.cancel();
+                }
+            }
+        }
+    }
+}
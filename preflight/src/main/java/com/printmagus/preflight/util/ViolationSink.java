@@ -0,0 +1,107 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects the violations of the pages processed by a single stream engine.
+ *
+ * Each violation is tagged with the sequence number of the operator which produced it and a slot (eg. the index
+ * of the validator). The results of the XObject validators are added by the parser thread once their futures
+ * completed, so no locking is needed and the order is the same on every run, no matter which validator finished
+ * first.
+ *
+ * When a page ends its violations are sorted, then retained and / or handed to the publisher.
+ */
+public class ViolationSink
+{
+    private static final Comparator<Entry> ORDER = Comparator
+        .comparingLong((Entry e) -> e.sequence)
+        .thenComparingInt(e -> e.slot)
+        .thenComparingInt(e -> e.order);
+
+    private List<Entry> page = new ArrayList<>();
+    private List<Violation> violations = new ArrayList<>();
+    private ViolationPublisher publisher;
+    private boolean retain = true;
+
+    public void add(long sequence, int slot, Violation violation)
+    {
+        page.add(new Entry(sequence, slot, page.size(), violation));
+    }
+
+    public void addAll(long sequence, int slot, List<Violation> violations)
+    {
+        for (Violation violation: violations) {
+            add(sequence, slot, violation);
+        }
+    }
+
+    /**
+     * Sorts the violations of the current page and passes them on.
+     */
+    public void endPage()
+    {
+        if (page.isEmpty()) {
+            return;
+        }
+
+        page.sort(ORDER);
+
+        List<Violation> sorted = new ArrayList<>(page.size());
+
+        for (Entry entry: page) {
+            sorted.add(entry.violation);
+        }
+
+        page.clear();
+
+        if (retain) {
+            violations.addAll(sorted);
+        }
+
+        if (publisher != null) {
+            publisher.publish(sorted);
+        }
+    }
+
+    public void setPublisher(ViolationPublisher publisher)
+    {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Without retaining, the violations are only published and memory use does not grow with the document.
+     */
+    public void setRetain(boolean retain)
+    {
+        this.retain = retain;
+    }
+
+    /**
+     * The retained violations of every ended page, in page order.
+     */
+    public List<Violation> getViolations()
+    {
+        return violations;
+    }
+
+    private static class Entry
+    {
+        final long sequence;
+        final int slot;
+        final int order;
+        final Violation violation;
+
+        Entry(long sequence, int slot, int order, Violation violation)
+        {
+            this.sequence = sequence;
+            this.slot = slot;
+            this.order = order;
+            this.violation = violation;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Results and metadata of the XObjects of a document, keyed by the identity of the XObject stream.
+ *
+ * An image placed on every page is one stream, no matter under which resource name it is used, so it is
+ * only analysed once. Only used from the parser thread.
+ */
+public class XObjectCache
+{
+    private final Map<COSBase, ImageInfo> images = new IdentityHashMap<>();
+    private final Map<COSBase, Map<Integer, Future<List<Violation>>>> results = new IdentityHashMap<>();
+
+    public ImageInfo getImageInfo(PDImageXObject image)
+    {
+        return images.computeIfAbsent(image.getCOSObject(), key -> ImageInfo.of(image));
+    }
+
+    /**
+     * The pending or completed result of the validator in the slot, null if it did not see the stream yet.
+     */
+    public Future<List<Violation>> getResult(COSBase stream, int slot)
+    {
+        Map<Integer, Future<List<Violation>>> slots = results.get(stream);
+
+        return slots == null ? null : slots.get(slot);
+    }
+
+    public void putResult(COSBase stream, int slot, Future<List<Violation>> result)
+    {
+        results.computeIfAbsent(stream, key -> new HashMap<>()).put(slot, result);
+    }
+
+    public void clear()
+    {
+        images.clear();
+        results.clear();
+    }
+}
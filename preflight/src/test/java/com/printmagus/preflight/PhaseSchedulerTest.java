@@ -0,0 +1,188 @@
+package com.printmagus.preflight;
+
+import com.printmagus.preflight.rule.AbstractRule;
+import com.printmagus.preflight.rule.PageValidator;
+import com.printmagus.preflight.rule.ResourceValidator;
+import com.printmagus.preflight.rule.RuleInterface;
+import com.printmagus.preflight.rule.RuleScope;
+import com.printmagus.preflight.util.PreflightStreamEngine;
+import com.printmagus.preflight.util.ValidationBudget;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhaseSchedulerTest
+{
+    private PDDocument document;
+    private List<String> calls;
+
+    @Before
+    public void setUp()
+    {
+        document = new PDDocument();
+        calls = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            PDPage page = new PDPage();
+
+            page.setResources(new PDResources());
+            document.addPage(page);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        document.close();
+    }
+
+    @Test
+    public void runsThePhasesInOrderAndTheRulesByCost()
+    {
+        List<RuleInterface> rules = Arrays.asList(
+            new Recorder("resource", RuleScope.RESOURCE, 1),
+            new Recorder("expensive", RuleScope.DOCUMENT, 100),
+            new Recorder("page", RuleScope.PAGE, 10),
+            new Recorder("cheap", RuleScope.DOCUMENT, 1),
+            new Recorder("cheapPage", RuleScope.PAGE, 1),
+            new Recorder("same", RuleScope.DOCUMENT, 100)
+        );
+
+        validate(new PhaseScheduler(rules));
+
+        assertEquals(
+            Arrays.asList(
+                "cheap", "expensive", "same",
+                "cheapPage@0", "page@0", "resource@0",
+                "cheapPage@1", "page@1", "resource@1"
+            ),
+            calls
+        );
+    }
+
+    @Test
+    public void rulesWithoutTheValidatorOfTheirScopeRunWithTheDocument()
+    {
+        RuleInterface rule = new AbstractRule()
+        {
+            @Override
+            public RuleScope getScope()
+            {
+                return RuleScope.PAGE;
+            }
+
+            @Override
+            protected void doValidate(PDDocument document, List<Violation> violations)
+            {
+                calls.add("document");
+            }
+        };
+
+        assertEquals(RuleScope.DOCUMENT, PhaseScheduler.getPhase(rule));
+        assertEquals(RuleScope.PAGE, PhaseScheduler.getPhase(new Recorder("page", RuleScope.PAGE, 1)));
+
+        validate(new PhaseScheduler(Collections.singletonList(rule)));
+
+        assertEquals(Collections.singletonList("document"), calls);
+    }
+
+    @Test
+    public void skipsTheRemainingWorkOnceTheBudgetIsExhausted()
+    {
+        List<RuleInterface> rules = Arrays.asList(
+            new Recorder("first", RuleScope.DOCUMENT, 1, true),
+            new Recorder("second", RuleScope.DOCUMENT, 2),
+            new Recorder("page", RuleScope.PAGE, 1)
+        );
+
+        List<Violation> violations = validate(new PhaseScheduler(rules, new ValidationBudget(1, Collections.emptySet())));
+
+        assertEquals(Collections.singletonList("first"), calls);
+        assertEquals(1, violations.size());
+    }
+
+    private List<Violation> validate(PhaseScheduler scheduler)
+    {
+        PreflightStreamEngine engine = new PreflightStreamEngine();
+        List<Violation> violations = scheduler.validateDocument(new ValidationContext(document), engine);
+
+        scheduler.validatePages(document, 0, document.getNumberOfPages(), engine);
+        violations.addAll(engine.getViolations());
+
+        return violations;
+    }
+
+    /**
+     * Records its calls, in the phase of its scope.
+     */
+    private class Recorder extends AbstractRule implements PageValidator, ResourceValidator
+    {
+        private final String name;
+        private final RuleScope scope;
+        private final int cost;
+        private final boolean violates;
+
+        Recorder(String name, RuleScope scope, int cost)
+        {
+            this(name, scope, cost, false);
+        }
+
+        Recorder(String name, RuleScope scope, int cost, boolean violates)
+        {
+            this.name = name;
+            this.scope = scope;
+            this.cost = cost;
+            this.violates = violates;
+        }
+
+        @Override
+        public RuleScope getScope()
+        {
+            return scope;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return cost;
+        }
+
+        @Override
+        protected void doValidate(PDDocument document, List<Violation> violations)
+        {
+            record(name, null, violations);
+        }
+
+        @Override
+        public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
+        {
+            record(name + "@" + pageIndex, pageIndex, violations);
+        }
+
+        @Override
+        public void validateResources(PDResources resources, PDPage page, Integer pageIndex, List<Violation> violations)
+        {
+            record(name + "@" + pageIndex, pageIndex, violations);
+        }
+
+        private void record(String call, Integer pageIndex, List<Violation> violations)
+        {
+            calls.add(call);
+
+            if (violates) {
+                violations.add(new Violation(name, "violation", pageIndex));
+            }
+        }
+    }
+}
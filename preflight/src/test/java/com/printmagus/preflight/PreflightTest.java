@@ -0,0 +1,111 @@
+package com.printmagus.preflight;
+
+import com.printmagus.preflight.rule.AbstractRule;
+import com.printmagus.preflight.rule.PageValidator;
+import com.printmagus.preflight.rule.RuleScope;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streaming the violations to a listener.
+ */
+public class PreflightTest
+{
+    private PDDocument document;
+    private List<Integer> validatedPages;
+    private Preflight preflight;
+
+    @Before
+    public void setUp()
+    {
+        document = new PDDocument();
+        validatedPages = new ArrayList<>();
+        preflight = new Preflight();
+
+        for (int i = 0; i < 5; i++) {
+            document.addPage(new PDPage());
+        }
+
+        preflight.addRule(new EveryPage());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        document.close();
+    }
+
+    @Test
+    public void deliversTheViolationsInPageOrder()
+    {
+        List<Integer> delivered = new ArrayList<>();
+
+        PreflightResult result = preflight.execute(document, violation -> delivered.add(violation.getPage()));
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), delivered);
+        assertTrue(result.getViolations().isEmpty());
+        assertFalse(result.isStopped());
+    }
+
+    @Test
+    public void listenerCancelsTheRemainingPages()
+    {
+        List<Integer> delivered = new ArrayList<>();
+
+        PreflightResult result = preflight.execute(document, violation -> {
+            delivered.add(violation.getPage());
+
+            return delivered.size() < 2;
+        });
+
+        assertEquals(Arrays.asList(0, 1), delivered);
+        assertEquals(Arrays.asList(0, 1), validatedPages);
+        assertTrue(result.isStopped());
+    }
+
+    @Test
+    public void withoutListenerTheViolationsAreRetained()
+    {
+        PreflightResult result = preflight.execute(document);
+
+        assertEquals(5, result.getViolations().size());
+        assertFalse(result.isStopped());
+    }
+
+    /**
+     * Reports every page.
+     */
+    private class EveryPage extends AbstractRule implements PageValidator
+    {
+        @Override
+        public RuleScope getScope()
+        {
+            return RuleScope.PAGE;
+        }
+
+        @Override
+        protected void doValidate(PDDocument document, List<Violation> violations)
+        {
+            // Validated page by page
+        }
+
+        @Override
+        public void validatePage(PDPage page, Integer pageIndex, List<Violation> violations)
+        {
+            validatedPages.add(pageIndex);
+            violations.add(new Violation(EveryPage.class.getSimpleName(), "every_page", pageIndex));
+        }
+    }
+}
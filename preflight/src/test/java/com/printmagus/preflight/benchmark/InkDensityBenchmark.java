@@ -0,0 +1,84 @@
+package com.printmagus.preflight.benchmark;
+
+import com.printmagus.preflight.util.InkDensityKernel;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Throughput of the maximum ink density of 8-bit CMYK samples: the boxed float loop MaxInkDensityImage used
+ * to run over Raster.getPixels(), the scalar loop and the SWAR loop of InkDensityKernel.
+ *
+ * A plain harness, run it with the test classpath, eg. java ... InkDensityBenchmark [megapixels].
+ * Every loop is warmed up, the best of the measured runs is reported.
+ */
+public class InkDensityBenchmark
+{
+    private static final int WARMUP = 10;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args)
+    {
+        int pixels = (args.length > 0 ? Integer.parseInt(args[0]) : 4) * 1000 * 1000;
+        byte[] samples = new byte[pixels * 4];
+        float[] floats = new float[samples.length];
+
+        new Random(19).nextBytes(samples);
+
+        for (int i = 0; i < samples.length; i++) {
+            floats[i] = samples[i] & 0xff;
+        }
+
+        ByteBuffer view = InkDensityKernel.wrap(samples);
+
+        report("boxed float", pixels, () -> boxed(floats));
+        report("scalar", pixels, () -> InkDensityKernel.maxTotal(samples, 0, samples.length));
+        report("swar", pixels, () -> InkDensityKernel.maxTotal(view, samples.length));
+    }
+
+    private static int boxed(float[] pixels)
+    {
+        Float max = 0f;
+
+        for (int i = 0; i < pixels.length; i += 4) {
+            Float density = pixels[i] + pixels[i + 1] + pixels[i + 2] + pixels[i + 3];
+
+            if (density > max) {
+                max = density;
+            }
+        }
+
+        return max.intValue();
+    }
+
+    private static void report(String name, int pixels, Loop loop)
+    {
+        int result = 0;
+
+        for (int i = 0; i < WARMUP; i++) {
+            result += loop.run();
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+
+            result += loop.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf(
+            "%-12s %8.2f ms %10.1f Mpixel/s (%d)%n",
+            name,
+            best / 1e6,
+            pixels / (best / 1e3),
+            result / (WARMUP + RUNS)
+        );
+    }
+
+    private interface Loop
+    {
+        int run();
+    }
+}
@@ -0,0 +1,129 @@
+package com.printmagus.preflight.benchmark;
+
+import com.printmagus.preflight.util.SampledRasterReader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Throughput of the 8-bit path of SampledRasterReader on a Flate compressed CMYK image, against the
+ * per-pixel reads into a banded raster it replaced.
+ *
+ * A plain harness, run it with the test classpath, eg. java ... SampledRasterReaderBenchmark [width] [height].
+ * Both paths include the Flate decoding, the best of the measured runs is reported in MB of samples per second.
+ */
+public class SampledRasterReaderBenchmark
+{
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws IOException
+    {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1500;
+
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = createImage(document, width, height);
+            long bytes = (long) width * height * 4;
+
+            report("per pixel", bytes, () -> perPixel(image));
+            report("bulk", bytes, () -> SampledRasterReader.getRaster(image, null));
+        }
+    }
+
+    /**
+     * Random runs of colors, so the image compresses like a photo rather than like noise or a flat color.
+     */
+    private static PDImageXObject createImage(PDDocument document, int width, int height) throws IOException
+    {
+        Random random = new Random(21);
+        byte[] samples = new byte[width * height * 4];
+
+        for (int i = 0; i < samples.length; ) {
+            byte[] color = new byte[4];
+            int run = 1 + random.nextInt(16);
+
+            random.nextBytes(color);
+
+            for (int p = 0; p < run && i < samples.length; p++, i += 4) {
+                System.arraycopy(color, 0, samples, i, 4);
+            }
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+        try (DeflaterOutputStream output = new DeflaterOutputStream(encoded)) {
+            output.write(samples);
+        }
+
+        return new PDImageXObject(
+            document,
+            new ByteArrayInputStream(encoded.toByteArray()),
+            COSName.FLATE_DECODE,
+            width,
+            height,
+            8,
+            PDDeviceCMYK.INSTANCE
+        );
+    }
+
+    /**
+     * The former from8bit(): one read per pixel, scattered into the banks of a banded raster.
+     */
+    private static Raster perPixel(PDImageXObject image) throws IOException
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, width, height, 4, new Point(0, 0));
+        byte[][] banks = ((DataBufferByte) raster.getDataBuffer()).getBankData();
+        byte[] pixel = new byte[4];
+
+        try (InputStream input = image.createInputStream()) {
+            for (int i = 0; i < width * height; i++) {
+                input.read(pixel);
+
+                for (int c = 0; c < 4; c++) {
+                    banks[c][i] = pixel[c];
+                }
+            }
+        }
+
+        return raster;
+    }
+
+    private static void report(String name, long bytes, Read read) throws IOException
+    {
+        for (int i = 0; i < WARMUP; i++) {
+            read.run();
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+
+            read.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-10s %8.2f ms %8.1f MB/s%n", name, best / 1e6, bytes / (best / 1e3));
+    }
+
+    private interface Read
+    {
+        Raster run() throws IOException;
+    }
+}
@@ -0,0 +1,137 @@
+package com.printmagus.preflight.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ImageAnalysisCacheTest
+{
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("image-analysis", ".cache");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException
+    {
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 64)) {
+            assertNull(cache.get(key(1, 0)));
+
+            cache.put(key(1, 0), new ImageAnalysis(640, 480, "DeviceCMYK", 312.5f));
+            cache.put(key(2, 0), new ImageAnalysis(10, 20, null, null));
+
+            assertAnalysis(cache.get(key(1, 0)), 640, 480, "DeviceCMYK", 312.5f);
+            assertAnalysis(cache.get(key(2, 0)), 10, 20, null, null);
+        }
+    }
+
+    @Test
+    public void survivesReopening() throws IOException
+    {
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 64)) {
+            cache.put(key(1, 0), new ImageAnalysis(640, 480, "DeviceCMYK", 312.5f));
+        }
+
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 64)) {
+            assertAnalysis(cache.get(key(1, 0)), 640, 480, "DeviceCMYK", 312.5f);
+        }
+
+        // Another geometry starts over
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 128)) {
+            assertNull(cache.get(key(1, 0)));
+        }
+    }
+
+    @Test
+    public void replacesTheAnalysisOfAKey() throws IOException
+    {
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 64)) {
+            cache.put(key(1, 0), new ImageAnalysis(640, 480, "DeviceCMYK", 312.5f));
+            cache.put(key(1, 0), new ImageAnalysis(640, 480, "DeviceCMYK", 280f));
+
+            assertAnalysis(cache.get(key(1, 0)), 640, 480, "DeviceCMYK", 280f);
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedOfTheSet() throws IOException
+    {
+        // A single set of 8 ways
+        try (ImageAnalysisCache cache = new ImageAnalysisCache(file, 8)) {
+            for (int i = 0; i < 8; i++) {
+                cache.put(key(0, i), new ImageAnalysis(i, i, null, null));
+            }
+
+            // Key 0 becomes the most recently used, key 1 the least
+            assertNotNull(cache.get(key(0, 0)));
+
+            cache.put(key(0, 8), new ImageAnalysis(8, 8, null, null));
+
+            assertNull(cache.get(key(0, 1)));
+            assertAnalysis(cache.get(key(0, 0)), 0, 0, null, null);
+            assertAnalysis(cache.get(key(0, 8)), 8, 8, null, null);
+
+            for (int i = 2; i < 8; i++) {
+                assertAnalysis(cache.get(key(0, i)), i, i, null, null);
+            }
+        }
+    }
+
+    @Test
+    public void isLockedWhileOpen() throws IOException
+    {
+        ImageAnalysisCache cache = new ImageAnalysisCache(file, 64);
+
+        try {
+            new ImageAnalysisCache(file, 64).close();
+            fail("The file was opened twice");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            cache.close();
+        }
+
+        new ImageAnalysisCache(file, 64).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsACapacityWhichCanNotBeMapped() throws IOException
+    {
+        new ImageAnalysisCache(file, Integer.MAX_VALUE).close();
+    }
+
+    /**
+     * The first 8 bytes of a key pick its set, the id makes it unique within the set.
+     */
+    private static byte[] key(long set, int id)
+    {
+        return ByteBuffer.allocate(32).putLong(set).putInt(id).array();
+    }
+
+    private static void assertAnalysis(ImageAnalysis analysis, int width, int height, String colorSpace, Float ink)
+    {
+        assertNotNull(analysis);
+        assertEquals(width, analysis.getWidth());
+        assertEquals(height, analysis.getHeight());
+        assertEquals(colorSpace, analysis.getColorSpace());
+        assertEquals(ink, analysis.getMaxInkDensity());
+    }
+}
@@ -0,0 +1,144 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageFitDestination;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Documents of 3 pages: pages 0 and 2 share a form XObject, page 2 links to page 1.
+ */
+public class IncrementalUpdateTest
+{
+    @Test
+    public void nothingChangedWithoutUpdates() throws IOException
+    {
+        byte[] original = createDocument();
+
+        try (PDDocument document = PDDocument.load(original)) {
+            IncrementalUpdate update = IncrementalUpdate.of(document, original.length);
+
+            assertTrue(update.isEmpty());
+
+            for (PDPage page: document.getPages()) {
+                assertFalse(update.isPageAffected(page));
+            }
+        }
+    }
+
+    @Test
+    public void replacedContentsAffectTheirPageOnly() throws IOException
+    {
+        byte[] original = createDocument();
+        ByteArrayOutputStream updated = new ByteArrayOutputStream();
+
+        try (PDDocument document = PDDocument.load(original)) {
+            PDPage page = document.getPage(1);
+
+            page.setContents(new PDStream(document, content("0 0 50 50 re f")));
+            page.getCOSObject().setNeedToBeUpdated(true);
+            document.getPages().getCOSObject().setNeedToBeUpdated(true);
+            document.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+            document.saveIncremental(updated);
+        }
+
+        // Page 2 links to page 1, other pages are not walked
+        assertAffected(original, updated.toByteArray(), false, true, false);
+    }
+
+    @Test
+    public void changedSharedResourceAffectsEveryPageUsingIt() throws IOException
+    {
+        byte[] original = createDocument();
+        ByteArrayOutputStream updated = new ByteArrayOutputStream();
+
+        try (PDDocument document = PDDocument.load(original)) {
+            PDResources resources = document.getPage(0).getResources();
+            COSDictionary form = (COSDictionary) resources.getXObject(COSName.getPDFName("Shared")).getCOSObject();
+
+            form.setItem(COSName.BBOX, new COSArray());
+            form.setNeedToBeUpdated(true);
+
+            // PDFBox writes the objects which are reachable from the catalog through updated objects
+            resources.getCOSObject().setNeedToBeUpdated(true);
+            resources.getCOSObject().getCOSDictionary(COSName.XOBJECT).setNeedToBeUpdated(true);
+            document.getPage(0).getCOSObject().setNeedToBeUpdated(true);
+            document.getPages().getCOSObject().setNeedToBeUpdated(true);
+            document.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+            document.saveIncremental(updated);
+        }
+
+        assertAffected(original, updated.toByteArray(), true, false, true);
+    }
+
+    private static void assertAffected(byte[] original, byte[] updated, boolean... affected) throws IOException
+    {
+        try (PDDocument document = PDDocument.load(updated)) {
+            IncrementalUpdate update = IncrementalUpdate.of(document, original.length);
+
+            assertFalse(update.isEmpty());
+
+            for (int i = 0; i < affected.length; i++) {
+                assertEquals("page " + i, affected[i], update.isPageAffected(document.getPage(i)));
+            }
+        }
+    }
+
+    private static byte[] createDocument() throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (PDDocument document = new PDDocument()) {
+            PDFormXObject form = new PDFormXObject(new PDStream(document, content("0 0 5 5 re f")));
+
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage();
+
+                document.addPage(page);
+
+                try (PDPageContentStream contents = new PDPageContentStream(document, page)) {
+                    contents.addRect(0, 0, 10 + i, 10);
+                    contents.fill();
+                }
+
+                if (i != 1) {
+                    page.getResources().put(COSName.getPDFName("Shared"), form);
+                }
+            }
+
+            PDAnnotationLink link = new PDAnnotationLink();
+            PDPageFitDestination destination = new PDPageFitDestination();
+
+            destination.setPage(document.getPage(1));
+            link.setDestination(destination);
+            document.getPage(2).setAnnotations(Collections.singletonList(link));
+
+            document.save(output);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static ByteArrayInputStream content(String operators)
+    {
+        return new ByteArrayInputStream(operators.getBytes(StandardCharsets.US_ASCII));
+    }
+}
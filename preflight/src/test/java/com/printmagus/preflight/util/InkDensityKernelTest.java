@@ -0,0 +1,91 @@
+package com.printmagus.preflight.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The SWAR loop of InkDensityKernel against the scalar loop, and the reducer with and without the kernel.
+ */
+public class InkDensityKernelTest
+{
+    @Test
+    public void swarEqualsScalar()
+    {
+        Random random = new Random(19);
+
+        for (int pixels = 0; pixels < 67; pixels++) {
+            byte[] samples = new byte[pixels * 4];
+
+            for (int i = 0; i < 20; i++) {
+                random.nextBytes(samples);
+
+                assertEquals(
+                    pixels + " pixels",
+                    InkDensityKernel.maxTotal(samples, 0, samples.length),
+                    InkDensityKernel.maxTotal(InkDensityKernel.wrap(samples), samples.length)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void fullCoverageDoesNotOverflow()
+    {
+        byte[] samples = new byte[4 * 9];
+
+        Arrays.fill(samples, (byte) 0xff);
+
+        assertEquals(1020, InkDensityKernel.maxTotal(InkDensityKernel.wrap(samples), samples.length));
+    }
+
+    @Test
+    public void maximumInAnyPixelOfTheWord()
+    {
+        for (int pixel = 0; pixel < 5; pixel++) {
+            byte[] samples = new byte[4 * 5];
+
+            Arrays.fill(samples, pixel * 4, pixel * 4 + 4, (byte) 200);
+
+            assertEquals("pixel " + pixel, 800, InkDensityKernel.maxTotal(InkDensityKernel.wrap(samples), samples.length));
+        }
+    }
+
+    @Test
+    public void onlyTheFirstBytesAreRead()
+    {
+        byte[] samples = new byte[4 * 8];
+
+        Arrays.fill(samples, 4 * 3, samples.length, (byte) 0xff);
+
+        assertEquals(0, InkDensityKernel.maxTotal(InkDensityKernel.wrap(samples), 4 * 3));
+        assertEquals(1020, InkDensityKernel.maxTotal(InkDensityKernel.wrap(samples), 4 * 4));
+    }
+
+    @Test
+    public void reducerWithKernelEqualsStatistics()
+    {
+        Random random = new Random(4);
+        int width = 37;
+        int height = 11;
+        InkDensityReducer kernel = new InkDensityReducer(false);
+        InkDensityReducer statistics = new InkDensityReducer(true);
+
+        kernel.begin(width, height, 4);
+        statistics.begin(width, height, 4);
+
+        for (int y = 0; y < height; y++) {
+            byte[] row = new byte[width * 4];
+
+            random.nextBytes(row);
+            kernel.row(y, row);
+            statistics.row(y, row);
+        }
+
+        assertEquals(statistics.getMaxDensity(), kernel.getMaxDensity());
+        assertEquals(statistics.getMaxRow(), kernel.getMaxRow());
+    }
+}
@@ -0,0 +1,211 @@
+package com.printmagus.preflight.util;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * The table driven paths of RowUnpacker against the conversion of PDFBox's SampledImageReader.fromAny(),
+ * which reads every sample with ImageInputStream.readBits() and interpolates it through the decode array.
+ * Single component 1-bit images are expanded to 0 / 255 like from1Bit(), also when they are indexed.
+ */
+public class RowUnpackerTest
+{
+    private PDDocument document;
+    private Random random;
+
+    @Before
+    public void setUp()
+    {
+        document = new PDDocument();
+        random = new Random(7);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        document.close();
+    }
+
+    @Test
+    public void unpacks1Bit() throws IOException
+    {
+        verify(1);
+    }
+
+    @Test
+    public void unpacks2Bits() throws IOException
+    {
+        verify(2);
+    }
+
+    @Test
+    public void unpacks4Bits() throws IOException
+    {
+        verify(4);
+    }
+
+    @Test
+    public void unpacks16Bits() throws IOException
+    {
+        verify(16);
+    }
+
+    private void verify(int bitsPerComponent) throws IOException
+    {
+        for (PDColorSpace colorSpace: getColorSpaces(bitsPerComponent)) {
+            for (int decode = 0; decode < 3; decode++) {
+                for (int i = 0; i < 4; i++) {
+                    int width = 1 + random.nextInt(97);
+                    int height = 1 + random.nextInt(13);
+                    String name = bitsPerComponent + " bpc, " + colorSpace.getName() + ", decode " + decode
+                        + ", " + width + "x" + height;
+
+                    verify(name, createImage(colorSpace, bitsPerComponent, width, height, decode));
+                }
+            }
+        }
+    }
+
+    private void verify(String name, PDImageXObject image) throws IOException
+    {
+        RowUnpacker unpacker = RowUnpacker.of(image, null);
+        byte[] packed = new byte[unpacker.getPackedLength()];
+        byte[] row = new byte[unpacker.getRowLength()];
+        byte[][] expected = fromAny(image);
+
+        try (java.io.InputStream input = image.createInputStream()) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                int length = SampledRasterReader.readRow(input, packed);
+
+                unpacker.unpack(packed, 0, length, row);
+
+                assertArrayEquals(name + ", row " + y, expected[y], row);
+            }
+        }
+    }
+
+    private PDColorSpace[] getColorSpaces(int bitsPerComponent) throws IOException
+    {
+        if (bitsPerComponent == 16) {
+            return new PDColorSpace[] {PDDeviceGray.INSTANCE, PDDeviceRGB.INSTANCE, PDDeviceCMYK.INSTANCE};
+        }
+
+        COSArray indexed = new COSArray();
+
+        indexed.add(COSName.INDEXED);
+        indexed.add(COSName.DEVICERGB);
+        indexed.add(COSInteger.get((1 << bitsPerComponent) - 1));
+        indexed.add(new COSString(new byte[3 << bitsPerComponent]));
+
+        return new PDColorSpace[] {
+            PDDeviceGray.INSTANCE, PDDeviceRGB.INSTANCE, PDDeviceCMYK.INSTANCE, PDColorSpace.create(indexed)
+        };
+    }
+
+    /**
+     * Random samples, with the default decode array (0), an inverted one (1) or a random one (2).
+     */
+    private PDImageXObject createImage(PDColorSpace colorSpace, int bitsPerComponent, int width, int height, int decode)
+        throws IOException
+    {
+        int numComponents = colorSpace.getNumberOfComponents();
+        byte[] samples = new byte[(width * numComponents * bitsPerComponent + 7) / 8 * height];
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+        random.nextBytes(samples);
+
+        try (DeflaterOutputStream output = new DeflaterOutputStream(encoded)) {
+            output.write(samples);
+        }
+
+        PDImageXObject image = new PDImageXObject(
+            document,
+            new ByteArrayInputStream(encoded.toByteArray()),
+            COSName.FLATE_DECODE,
+            width,
+            height,
+            bitsPerComponent,
+            colorSpace
+        );
+
+        if (decode > 0 && !(colorSpace instanceof PDIndexed)) {
+            COSArray array = new COSArray();
+
+            for (int c = 0; c < numComponents; c++) {
+                if (decode == 1) {
+                    array.add(new COSFloat(1f));
+                    array.add(new COSFloat(0f));
+                } else {
+                    array.add(new COSFloat(random.nextFloat()));
+                    array.add(new COSFloat(random.nextFloat() * 3));
+                }
+            }
+
+            image.getCOSObject().setItem(COSName.DECODE, array);
+        }
+
+        return image;
+    }
+
+    /**
+     * The samples of every row, as converted by SampledImageReader of PDFBox 2.0.
+     */
+    private static byte[][] fromAny(PDImageXObject image) throws IOException
+    {
+        int numComponents = image.getColorSpace().getNumberOfComponents();
+        int width = image.getWidth();
+        int bitsPerComponent = image.getBitsPerComponent();
+        float[] decode = SampledRasterReader.getDecodeArray(image);
+        float sampleMax = (float) Math.pow(2, bitsPerComponent) - 1f;
+        boolean isIndexed = image.getColorSpace() instanceof PDIndexed;
+        boolean isBinary = bitsPerComponent == 1 && numComponents == 1;
+        int padding = (8 - width * numComponents * bitsPerComponent % 8) % 8;
+        byte[][] rows = new byte[image.getHeight()][width * numComponents];
+
+        try (ImageInputStream input = new MemoryCacheImageInputStream(image.createInputStream())) {
+            for (byte[] row: rows) {
+                for (int i = 0; i < row.length; i++) {
+                    int value = (int) input.readBits(bitsPerComponent);
+                    float dMin = decode[(i % numComponents) * 2];
+                    float dMax = decode[(i % numComponents) * 2 + 1];
+                    float output = dMin + (value * ((dMax - dMin) / sampleMax));
+
+                    if (isBinary) {
+                        row[i] = (byte) ((isIndexed || dMin < dMax) == (value == 1) ? 255 : 0);
+                    } else if (isIndexed) {
+                        row[i] = (byte) Math.round(output);
+                    } else {
+                        row[i] = (byte) Math.round(((output - Math.min(dMin, dMax)) / Math.abs(dMax - dMin)) * 255f);
+                    }
+                }
+
+                input.readBits(padding);
+            }
+        }
+
+        return rows;
+    }
+}
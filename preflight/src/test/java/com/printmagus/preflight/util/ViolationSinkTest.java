@@ -0,0 +1,85 @@
+package com.printmagus.preflight.util;
+
+import com.printmagus.preflight.Violation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationSinkTest
+{
+    @Test
+    public void sortsAPageBySequenceSlotAndArrival()
+    {
+        ViolationSink sink = new ViolationSink();
+
+        // As the futures of the XObject validators complete, out of order
+        sink.add(7, 1, violation("c", 0));
+        sink.add(3, 2, violation("b", 0));
+        sink.add(7, 0, violation("c0", 0));
+        sink.addAll(3, 0, Arrays.asList(violation("a1", 0), violation("a2", 0)));
+        sink.add(0, -1, violation("page", 0));
+        sink.endPage();
+
+        assertEquals(Arrays.asList("page", "a1", "a2", "b", "c0", "c"), messages(sink.getViolations()));
+    }
+
+    @Test
+    public void keepsPagesInTheOrderTheyEnded()
+    {
+        ViolationSink sink = new ViolationSink();
+
+        sink.add(5, 0, violation("first", 0));
+        sink.endPage();
+
+        // A page without violations
+        sink.endPage();
+
+        sink.add(1, 0, violation("third", 2));
+        sink.endPage();
+
+        assertEquals(Arrays.asList("first", "third"), messages(sink.getViolations()));
+    }
+
+    @Test
+    public void publishesEveryPageSorted()
+    {
+        ViolationSink sink = new ViolationSink();
+        List<String> published = new ArrayList<>();
+
+        sink.setPublisher(new ViolationPublisher(
+            violation -> published.add(violation.getMessage()),
+            ValidationBudget.unlimited()
+        ));
+        sink.setRetain(false);
+
+        sink.add(2, 0, violation("b", 0));
+        sink.add(1, 0, violation("a", 0));
+        sink.endPage();
+        sink.add(1, 0, violation("c", 1));
+        sink.endPage();
+
+        assertEquals(Arrays.asList("a", "b", "c"), published);
+        assertTrue(sink.getViolations().isEmpty());
+    }
+
+    private static Violation violation(String message, int page)
+    {
+        return new Violation("Rule", message, page);
+    }
+
+    private static List<String> messages(List<Violation> violations)
+    {
+        List<String> messages = new ArrayList<>();
+
+        for (Violation violation: violations) {
+            messages.add(violation.getMessage());
+        }
+
+        return messages;
+    }
+}